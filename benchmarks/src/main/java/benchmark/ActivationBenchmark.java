@@ -0,0 +1,114 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data.ActivationFunction;
+import data.EvaluationBackend;
+import network.BatchKernel;
+
+/**
+ * Throughput of the exact activation functions and their fast approximations, per value and through the kernels of
+ * both evaluation backends. The setup measures the accuracy of each approximation against its exact function and fails
+ * if it is worse than the documented maximum error.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ActivationBenchmark {
+
+	public static final int VALUES = 1024;
+	/** Accuracy is measured on this many evenly spaced inputs in [-ACCURACY_RANGE, ACCURACY_RANGE] */
+	public static final int ACCURACY_SAMPLES = 1 << 22;
+	public static final float ACCURACY_RANGE = 20;
+	/**
+	 * Inputs around which the approximations switch between their table or approximation and a constant, each is also
+	 * checked together with the floats right next to it and with its negation
+	 */
+	public static final float[] BOUNDARIES = { ActivationFunction.TANH_TABLE_RANGE,
+			2 * ActivationFunction.TANH_TABLE_RANGE, ActivationFunction.FAST_TANH_LIMIT,
+			2 * ActivationFunction.FAST_TANH_LIMIT };
+
+	@Param({ "SIGMOID", "FAST_SIGMOID", "LUT_SIGMOID", "TANH", "FAST_TANH", "LUT_TANH" })
+	public ActivationFunction function;
+
+	private float[] inputs;
+	private float[] values;
+	private BatchKernel scalar;
+	private BatchKernel vector;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(7);
+		inputs = new float[VALUES];
+		for (int i = 0; i < VALUES; i++) {
+			inputs[i] = (float) random.nextGaussian() * 3;
+		}
+		values = new float[VALUES];
+		scalar = EvaluationBackend.SCALAR.createKernel();
+		vector = EvaluationBackend.VECTOR.createKernel();
+		float error = measureError(function);
+		System.out.println(function + ": maximum error " + error + ", documented " + function.getMaxError());
+		if (error > function.getMaxError())
+			throw new IllegalStateException(function + " exceeds its maximum error: " + error);
+	}
+
+	/**
+	 * @return The largest absolute difference with the exact function, {@link ActivationFunction#SIGMOID} or
+	 *         {@link ActivationFunction#TANH}, over evenly spaced inputs and the {@link #BOUNDARIES}
+	 */
+	static float measureError(ActivationFunction af) {
+		ActivationFunction exact = af.name().endsWith("SIGMOID") ? ActivationFunction.SIGMOID : ActivationFunction.TANH;
+		float max = 0;
+		for (int i = 0; i <= ACCURACY_SAMPLES; i++) {
+			float x = -ACCURACY_RANGE + 2 * ACCURACY_RANGE * i / ACCURACY_SAMPLES;
+			max = Math.max(max, Math.abs(af.applyActivation(x) - exact.applyActivation(x)));
+		}
+		for (float boundary : BOUNDARIES) {
+			for (float b : new float[] { boundary, -boundary }) {
+				for (float x : new float[] { Math.nextDown(b), b, Math.nextUp(b) }) {
+					max = Math.max(max, Math.abs(af.applyActivation(x) - exact.applyActivation(x)));
+				}
+			}
+		}
+		return max;
+	}
+
+	@Benchmark
+	public float[] applyActivation() {
+		for (int i = 0; i < VALUES; i++) {
+			values[i] = function.applyActivation(inputs[i]);
+		}
+		return values;
+	}
+
+	@Benchmark
+	public float[] scalarKernel() {
+		System.arraycopy(inputs, 0, values, 0, VALUES);
+		scalar.activate(function, values, 0, VALUES);
+		return values;
+	}
+
+	@Benchmark
+	public float[] vectorKernel() {
+		System.arraycopy(inputs, 0, values, 0, VALUES);
+		vector.activate(function, values, 0, VALUES);
+		return values;
+	}
+
+}
@@ -0,0 +1,75 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data.EvaluationBackend;
+import network.Genome;
+import network.Phenotype;
+
+/**
+ * Evaluation of a single genome by the interpreter of its {@link Phenotype} and by generated code
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class CodeGenerationBenchmark {
+
+	public static final int INPUTS = 16, OUTPUTS = 4, SAMPLES = 1024;
+
+	@Param({ "50", "200", "1000" })
+	public int genes;
+
+	@Param({ "false", "true" })
+	public boolean generateCode;
+
+	private Phenotype phenotype;
+	private float[] sample;
+	private float[] output;
+	private float[] samples;
+	private float[] outputs;
+
+	@Setup
+	public void setup() {
+		Genome genome = SyntheticGenomes.createPopulation(INPUTS, OUTPUTS, genes, 1, EvaluationBackend.SCALAR, 42)
+				.getGenomes().get(0);
+		phenotype = genome.getPhenotype();
+		if (generateCode && !phenotype.generateCode())
+			throw new IllegalStateException("Genome with " + genes + " genes can not be compiled");
+		samples = SyntheticGenomes.createSamples(SAMPLES, INPUTS, 7);
+		sample = new float[INPUTS];
+		System.arraycopy(samples, 0, sample, 0, INPUTS);
+		output = new float[OUTPUTS];
+		outputs = new float[SAMPLES * OUTPUTS];
+	}
+
+	@Benchmark
+	public float[] computeOutput() {
+		phenotype.computeOutput(sample, output);
+		return output;
+	}
+
+	/**
+	 * Evaluates {@link #SAMPLES} samples at once
+	 */
+	@Benchmark
+	public float[] computeOutputs() {
+		phenotype.computeOutputs(samples, SAMPLES, outputs);
+		return outputs;
+	}
+
+}
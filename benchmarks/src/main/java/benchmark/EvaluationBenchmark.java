@@ -0,0 +1,78 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data.EvaluationBackend;
+import network.Genome;
+
+/**
+ * Evaluation of a single genome, per sample and batched, for both evaluation backends
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class EvaluationBenchmark {
+
+	public static final int INPUTS = 16, OUTPUTS = 4, SAMPLES = 1024;
+
+	@Param({ "50", "200", "1000" })
+	public int genes;
+
+	@Param({ "SCALAR", "VECTOR" })
+	public EvaluationBackend backend;
+
+	private Genome genome;
+	private float[] sample;
+	private ArrayList<Float> sampleList;
+	private float[] output;
+	private float[] samples;
+
+	@Setup
+	public void setup() {
+		genome = SyntheticGenomes.createPopulation(INPUTS, OUTPUTS, genes, 1, backend, 42).getGenomes().get(0);
+		samples = SyntheticGenomes.createSamples(SAMPLES, INPUTS, 7);
+		sample = new float[INPUTS];
+		System.arraycopy(samples, 0, sample, 0, INPUTS);
+		sampleList = new ArrayList<>();
+		for (float f : sample) {
+			sampleList.add(f);
+		}
+		output = new float[OUTPUTS];
+	}
+
+	@Benchmark
+	public ArrayList<Float> computeOutputList() {
+		return genome.computeOutput(sampleList);
+	}
+
+	@Benchmark
+	public float[] computeOutput() {
+		genome.getPhenotype().computeOutput(sample, output);
+		return output;
+	}
+
+	/**
+	 * Evaluates {@link #SAMPLES} samples at once
+	 */
+	@Benchmark
+	public float[] computeOutputs() {
+		return genome.computeOutputs(samples, SAMPLES);
+	}
+
+}
@@ -0,0 +1,96 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data.EvaluationBackend;
+import data.EvaluationMethod;
+import data.NEATHeuristic;
+import network.Core;
+import network.Genome;
+
+/**
+ * A full generation of a {@link Core}: evaluation, speciation, killing, breeding and mutation, starting from a synthetic
+ * population of the given size and genome size
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class GenerationBenchmark {
+
+	public static final int INPUTS = 16, OUTPUTS = 4, SAMPLES = 256;
+
+	@Param({ "100", "1000", "5000" })
+	public int populationSize;
+
+	@Param({ "50", "200", "1000" })
+	public int genes;
+
+	@Param({ "SERIAL", "FORK_JOIN" })
+	public EvaluationMethod evaluationMethod;
+
+	private NEATHeuristic heuristic;
+	private Core core;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		float[] samples = SyntheticGenomes.createSamples(SAMPLES, INPUTS, 7);
+		heuristic = new NEATHeuristic() {
+			@Override
+			public float computeFitness(Genome genome) {
+				float[] outputs = genome.computeOutputs(samples, SAMPLES);
+				float sum = 0;
+				for (float f : outputs) {
+					sum += f;
+				}
+				return Math.abs(sum);
+			}
+
+			@Override
+			public boolean isThreadSafe() {
+				return true;
+			}
+
+			@Override
+			public boolean checkStoppingCriteria(Core core) {
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Creates a new population for every invocation, so every measured generation starts from the same genomes instead
+	 * of from genomes that kept growing during the iteration. Building the population is not part of the measurement.
+	 */
+	@Setup(Level.Invocation)
+	public void createPopulation() {
+		core = SyntheticGenomes.createPopulation(INPUTS, OUTPUTS, genes, populationSize, EvaluationBackend.SCALAR,
+				heuristic, 42);
+		core.setEvaluationMethod(evaluationMethod);
+	}
+
+	/**
+	 * Runs a single generation of the population
+	 */
+	@Benchmark
+	public Core generation() {
+		core.step();
+		return core;
+	}
+
+}
@@ -0,0 +1,88 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data.EvaluationBackend;
+import network.CompactGenome;
+import network.Core;
+import network.Genome;
+
+/**
+ * Breeding, distance computation and mutation of genomes of different sizes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class GenomeBenchmark {
+
+	public static final int INPUTS = 16, OUTPUTS = 4, POPULATION = 64;
+
+	@Param({ "50", "200", "1000" })
+	public int genes;
+
+	private Core core;
+	private List<Genome> genomes;
+	private List<Genome> mutated;
+	private int next;
+	private SplittableRandom random = new SplittableRandom(42);
+
+	@Setup
+	public void setup() {
+		core = SyntheticGenomes.createPopulation(INPUTS, OUTPUTS, genes, POPULATION, EvaluationBackend.SCALAR, 42);
+		genomes = new ArrayList<>(core.getGenomes());
+	}
+
+	/**
+	 * Mutating lets genomes grow, so each iteration starts from fresh copies of the population
+	 */
+	@Setup(Level.Iteration)
+	public void copyPopulation() {
+		mutated = new ArrayList<>();
+		for (Genome g : genomes) {
+			mutated.add(CompactGenome.of(g).toGenome());
+		}
+	}
+
+	private Genome nextGenome() {
+		next = (next + 1) % POPULATION;
+		return genomes.get(next);
+	}
+
+	@Benchmark
+	public Genome breed() {
+		return nextGenome().breed(nextGenome(), random);
+	}
+
+	@Benchmark
+	public float computeDistance() {
+		return nextGenome().computeDistance(nextGenome());
+	}
+
+	@Benchmark
+	public Genome mutate() {
+		next = (next + 1) % POPULATION;
+		Genome g = mutated.get(next);
+		g.mutate(random);
+		return g;
+	}
+
+}
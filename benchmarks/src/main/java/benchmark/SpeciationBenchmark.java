@@ -0,0 +1,54 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data.EvaluationBackend;
+import network.Core;
+import network.Speciation;
+
+/**
+ * Speciation of a whole population from scratch, without cached distances or species of an earlier generation
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class SpeciationBenchmark {
+
+	public static final int INPUTS = 16, OUTPUTS = 4;
+
+	@Param({ "100", "1000", "5000" })
+	public int populationSize;
+
+	@Param({ "50", "200" })
+	public int genes;
+
+	private Core core;
+
+	@Setup
+	public void setup() {
+		core = SyntheticGenomes.createPopulation(INPUTS, OUTPUTS, genes, populationSize, EvaluationBackend.SCALAR, 42);
+	}
+
+	@Benchmark
+	public int speciate() {
+		core.getSpecies().clear();
+		new Speciation(core).speciate();
+		return core.getSpecies().size();
+	}
+
+}
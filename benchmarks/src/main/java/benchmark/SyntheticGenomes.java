@@ -0,0 +1,163 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import data.ActivationFunction;
+import data.BreedMethod;
+import data.EvaluationBackend;
+import data.KillMethod;
+import data.MutateMethod;
+import data.NEATHeuristic;
+import network.ConnectionGene;
+import network.Core;
+import network.Genome;
+import network.NodeGene;
+
+/**
+ * Generates populations of genomes with a controllable topology for the benchmarks. All genomes of a population draw
+ * their connections from a shared pool of feed-forward connections between the inputs, a number of hidden nodes and the
+ * outputs, so genomes are similar but not identical, like in an evolved population.
+ */
+public final class SyntheticGenomes {
+
+	/** The connection pool is this much larger than a genome, each genome picks a random subset */
+	public static final float POOL_FACTOR = 1.5f;
+
+	private SyntheticGenomes() {
+	}
+
+	/**
+	 * Creates a core holding a population of synthetic genomes
+	 *
+	 * @param inputs The number of input nodes
+	 * @param outputs The number of output nodes
+	 * @param genes The average number of connections per genome
+	 * @param populationSize The number of genomes
+	 * @param backend The evaluation backend of the core
+	 * @param seed The seed for the topology and weights
+	 * @return A core whose genomes are the synthetic population
+	 */
+	public static Core createPopulation(int inputs, int outputs, int genes, int populationSize,
+			EvaluationBackend backend, long seed) {
+		return createPopulation(inputs, outputs, genes, populationSize, backend, constantHeuristic(), seed);
+	}
+
+	/**
+	 * Creates a core holding a population of synthetic genomes, which is evolved further with the given heuristic
+	 *
+	 * @param inputs The number of input nodes
+	 * @param outputs The number of output nodes
+	 * @param genes The average number of connections per genome
+	 * @param populationSize The number of genomes
+	 * @param backend The evaluation backend of the core
+	 * @param heuristic The heuristic of the core
+	 * @param seed The seed for the topology and weights
+	 * @return A core whose genomes are the synthetic population
+	 */
+	public static Core createPopulation(int inputs, int outputs, int genes, int populationSize,
+			EvaluationBackend backend, NEATHeuristic heuristic, long seed) {
+		Core core = createCore(inputs, outputs, backend, heuristic, seed);
+		Random random = new Random(seed);
+
+		ArrayList<NodeGene> inputNodes = new ArrayList<>();
+		ArrayList<NodeGene> outputNodes = new ArrayList<>();
+		for (NodeGene ng : core.getGenomes().get(0).getNodes()) {
+			if (ng.getLayer() == NodeGene.Layer.INPUT) {
+				inputNodes.add(ng);
+			} else if (ng.getLayer() == NodeGene.Layer.OUTPUT) {
+				outputNodes.add(ng);
+			}
+		}
+		//Nodes in layered order, connections only go from a lower to a higher position so every genome is acyclic
+		ArrayList<NodeGene> ordered = new ArrayList<>(inputNodes);
+		int hiddenCount = Math.max(1, genes / 4);
+		for (int i = 0; i < hiddenCount; i++) {
+			ordered.add(core.getInnovations().createNode());
+		}
+		ordered.addAll(outputNodes);
+
+		ArrayList<ConnectionGene> pool = new ArrayList<>();
+		int poolSize = (int) (genes * POOL_FACTOR);
+		for (int attempt = 0; pool.size() < poolSize && attempt < poolSize * 20; attempt++) {
+			int a = random.nextInt(ordered.size() - outputNodes.size());
+			int b = Math.max(a + 1, inputNodes.size()) + random.nextInt(ordered.size() - Math.max(a + 1, inputNodes.size()));
+			ConnectionGene cg = core.getInnovations().getConnection(ordered.get(a), ordered.get(b));
+			if (!pool.contains(cg)) {
+				pool.add(cg);
+			}
+		}
+
+		core.getGenomes().clear();
+		for (int i = 0; i < populationSize; i++) {
+			Genome g = new Genome(core);
+			g.addNodes(inputNodes);
+			g.addNodes(outputNodes);
+			ArrayList<ConnectionGene> connections = new ArrayList<>();
+			for (ConnectionGene cg : pool) {
+				if (random.nextFloat() * POOL_FACTOR < 1) {
+					ConnectionGene copy = cg.copy();
+					copy.setWeight(random.nextFloat() * 2 - 1);
+					connections.add(copy);
+					for (NodeGene ng : new NodeGene[] { cg.getInput(), cg.getOutput() }) {
+						if (ng.getLayer() == NodeGene.Layer.HIDDEN && !g.getNodes().contains(ng)) {
+							g.addNode(ng);
+						}
+					}
+				}
+			}
+			g.addConnections(connections);
+			g.setFitness(random.nextFloat());
+			core.getGenomes().add(g);
+		}
+		return core;
+	}
+
+	/**
+	 * Creates a core with a minimal population by running a single generation, without printing anything
+	 */
+	private static Core createCore(int inputs, int outputs, EvaluationBackend backend, NEATHeuristic heuristic,
+			long seed) {
+		Core core = new Core(backend);
+		core.setSeed(seed);
+		core.setup(inputs, outputs, ActivationFunction.TANH, ActivationFunction.SIGMOID, KillMethod.BOTTOM_HALF,
+				BreedMethod.PERCENTILE, MutateMethod.PRESERVE_OLD, heuristic, 2);
+		core.step();
+		return core;
+	}
+
+	/**
+	 * @return A heuristic giving every genome the same fitness and stopping immediately
+	 */
+	public static NEATHeuristic constantHeuristic() {
+		return new NEATHeuristic() {
+			@Override
+			public float computeFitness(Genome genome) {
+				return 1;
+			}
+
+			@Override
+			public boolean checkStoppingCriteria(Core core) {
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Creates random samples for evaluating genomes
+	 *
+	 * @param samples The number of samples
+	 * @param inputs The number of inputs per sample
+	 * @param seed The seed of the values
+	 * @return The samples in row-major order
+	 */
+	public static float[] createSamples(int samples, int inputs, long seed) {
+		Random random = new Random(seed);
+		float[] values = new float[samples * inputs];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextFloat() * 2 - 1;
+		}
+		return values;
+	}
+
+}
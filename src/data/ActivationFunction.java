@@ -28,8 +28,124 @@ public enum ActivationFunction {
 			}
 			return 1;
 		}
+	},
+	/**
+	 * {@link #SIGMOID} computed from {@link #FAST_TANH}, in single precision without calling {@link Math#exp}
+	 */
+	FAST_SIGMOID {
+		@Override
+		public float applyActivation(float value) {
+			return 0.5f + 0.5f * fastTanh(0.5f * value);
+		}
+
+		@Override
+		public float getMaxError() {
+			return 5e-5f;
+		}
+	},
+	/**
+	 * {@link #TANH} approximated by a rational function (the Pad&eacute; approximant of order 7/6), which only takes
+	 * multiplications, additions and a single division
+	 */
+	FAST_TANH {
+		@Override
+		public float applyActivation(float value) {
+			return fastTanh(value);
+		}
+
+		@Override
+		public float getMaxError() {
+			return 1e-4f;
+		}
+	},
+	/**
+	 * {@link #SIGMOID} computed from the table of {@link #LUT_TANH}
+	 */
+	LUT_SIGMOID {
+		@Override
+		public float applyActivation(float value) {
+			return 0.5f + 0.5f * lutTanh(0.5f * value);
+		}
+
+		@Override
+		public float getMaxError() {
+			return 1e-6f;
+		}
+	},
+	/**
+	 * {@link #TANH} interpolated linearly between the values of a table computed once
+	 */
+	LUT_TANH {
+		@Override
+		public float applyActivation(float value) {
+			return lutTanh(value);
+		}
+
+		@Override
+		public float getMaxError() {
+			return 2e-6f;
+		}
 	};
+
+	/** Beyond this input the rational approximation of tanh would exceed 1 */
+	public static final float FAST_TANH_LIMIT = 4.97f;
+	/** The table of tanh covers the inputs from -TANH_TABLE_RANGE to TANH_TABLE_RANGE */
+	public static final float TANH_TABLE_RANGE = 8f;
+	/** The number of table entries per unit of input */
+	public static final int TANH_TABLE_RESOLUTION = 256;
 	
 	public abstract float applyActivation(float value);
 	
+	/**
+	 * @return The largest absolute difference between this function and the exact function it approximates, 0 for
+	 *         exact functions
+	 */
+	public float getMaxError() {
+		return 0;
+	}
+
+	/**
+	 * Rational approximation of tanh, the input is clamped where the approximation reaches 1
+	 */
+	public static float fastTanh(float value) {
+		float x = Math.max(-FAST_TANH_LIMIT, Math.min(FAST_TANH_LIMIT, value));
+		float x2 = x * x;
+		float numerator = x * (135135f + x2 * (17325f + x2 * (378f + x2)));
+		float denominator = 135135f + x2 * (62370f + x2 * (3150f + x2 * 28f));
+		return numerator / denominator;
+	}
+
+	/**
+	 * Linear interpolation in a table of tanh, inputs outside of the table are rounded to -1 or 1
+	 */
+	public static float lutTanh(float value) {
+		if (value >= TANH_TABLE_RANGE)
+			return 1f;
+		if (value <= -TANH_TABLE_RANGE)
+			return -1f;
+		float position = (value + TANH_TABLE_RANGE) * TANH_TABLE_RESOLUTION;
+		int index = (int) position;
+		float[] table = TanhTable.TABLE;
+		//Inputs just below the range can round onto the last entry, which has no next entry to interpolate with
+		if (index >= table.length - 1)
+			return table[table.length - 1];
+		float fraction = position - index;
+		return table[index] + fraction * (table[index + 1] - table[index]);
+	}
+
+	/**
+	 * Holds the table of tanh, which is only computed when it is first used
+	 */
+	private static final class TanhTable {
+
+		private static final float[] TABLE = new float[(int) (2 * TANH_TABLE_RANGE * TANH_TABLE_RESOLUTION) + 1];
+
+		static {
+			for (int i = 0; i < TABLE.length; i++) {
+				TABLE[i] = (float) Math.tanh((double) i / TANH_TABLE_RESOLUTION - TANH_TABLE_RANGE);
+			}
+		}
+
+	}
+
 }
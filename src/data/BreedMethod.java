@@ -1,55 +1,118 @@
 package data;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
 
 import network.Core;
 import network.Genome;
 import network.Species;
 
 public enum BreedMethod {
-	
+
+	/**
+	 * Parents are drawn with a chance proportional to their fitness within their species
+	 */
 	PERCENTILE {
-		float sum = 0;
 		@Override
-		public void breed(Core c) {
-			ArrayList<Genome> genomes = new ArrayList<>();
-			while (genomes.size() + c.getGenomes().size() < c.getPopulationSize()) {
-				Species s = c.getSpecies().get(Constants.rand.nextInt(c.getSpecies().size()));
-				Genome parent1 = selectParent(s);
-				Genome parent2 = null;
-				if (c.getSpecies().size() > 1 && Constants.rand.nextFloat() < INTERSPECIES) {
-					Species newS = s;
-					while (newS == s) {
-						newS = c.getSpecies().get(Constants.rand.nextInt(c.getSpecies().size()));
+		protected Selector createSelector(ArrayList<Genome> genomes) {
+			return new RouletteWheel(genomes)::select;
+		}
+	},
+	/**
+	 * Parents are the fittest of a few genomes drawn at random from their species, which only compares fitness and
+	 * also works for negative fitness values
+	 */
+	TOURNAMENT {
+		@Override
+		protected Selector createSelector(ArrayList<Genome> genomes) {
+			return random -> {
+				Genome best = genomes.get(random.nextInt(genomes.size()));
+				for (int i = 1; i < TOURNAMENT_SIZE; i++) {
+					Genome g = genomes.get(random.nextInt(genomes.size()));
+					if (g.getFitness() > best.getFitness()) {
+						best = g;
 					}
-					parent2 = selectParent(newS);
-				} else {
-					parent2 = selectParent(s);
 				}
-				genomes.add(parent1.breed(parent2));
-			}
-			c.getGenomes().addAll(genomes);
+				return best;
+			};
 		}
-		
-		private Genome selectParent(Species s) {
-			sum = 0;
-			ArrayList<Genome> genomes = s.getGenomes();
-			genomes.forEach(g -> sum += g.getFitness());
-			float randFitness = Constants.rand.nextFloat() * sum;
-			float currentSum = 0;
-			for (Genome g : genomes) {
-				currentSum += g.getFitness();
-				if (currentSum >= randFitness) {
-					sum -= g.getFitness();
-					return g;	
+	};
+
+	public static final float INTERSPECIES = 0.001f;
+	public static final int TOURNAMENT_SIZE = 3;
+
+	/**
+	 * Draws parents from the genomes of a single species
+	 */
+	protected interface Selector {
+		Genome select(SplittableRandom random);
+	}
+
+	/**
+	 * Fills the population of the core with children. All parent pairs are chosen first, after which the children are
+	 * bred in parallel, each with its own random stream so the result does not depend on the scheduling.
+	 *
+	 * @param c The core whose population should be filled
+	 */
+	public void breed(Core c) {
+		int count = c.getPopulationSize() - c.getGenomes().size();
+		if (count <= 0)
+			return;
+		List<Genome[]> parents = planParents(c, count, c.getRandom().get());
+		SplittableRandom[] randoms = new SplittableRandom[parents.size()];
+		for (int i = 0; i < randoms.length; i++) {
+			randoms[i] = c.getRandom().split();
+		}
+		Genome[] children = new Genome[parents.size()];
+		IntStream.range(0, children.length).parallel().forEach(i -> {
+			Genome[] pair = parents.get(i);
+			children[i] = pair[0].breed(pair[1], randoms[i]);
+		});
+		Collections.addAll(c.getGenomes(), children);
+	}
+
+	/**
+	 * Chooses the parents of all children to be bred. A species is chosen at random for each child, both parents come
+	 * from that species except for the odd interspecies child.
+	 *
+	 * @param c The core whose genomes are bred
+	 * @param count The number of children to be bred
+	 * @param random The random stream of the current generation
+	 * @return For each child the pair of parents it is bred from
+	 */
+	protected List<Genome[]> planParents(Core c, int count, SplittableRandom random) {
+		ArrayList<Species> species = c.getSpecies();
+		//Selection structures are built once per species, after which each draw is cheap
+		Selector[] selectors = new Selector[species.size()];
+		for (int i = 0; i < selectors.length; i++) {
+			selectors[i] = createSelector(species.get(i).getGenomes());
+		}
+		ArrayList<Genome[]> parents = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			int s = random.nextInt(species.size());
+			Genome parent1 = selectors[s].select(random);
+			Genome parent2 = null;
+			if (species.size() > 1 && random.nextFloat() < INTERSPECIES) {
+				int newS = s;
+				while (newS == s) {
+					newS = random.nextInt(species.size());
 				}
+				parent2 = selectors[newS].select(random);
+			} else {
+				parent2 = selectors[s].select(random);
 			}
-			return null;
+			parents.add(new Genome[] { parent1, parent2 });
 		}
-	};
+		return parents;
+	}
+
+	/**
+	 * @param genomes The non-empty genomes of a single species
+	 * @return A selector drawing parents from the given genomes
+	 */
+	protected abstract Selector createSelector(ArrayList<Genome> genomes);
 
-	public static final float INTERSPECIES = 0.001f;
-	
-	public abstract void breed(Core c);
-	
 }
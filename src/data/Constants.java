@@ -1,14 +0,0 @@
-package data;
-
-import java.util.Random;
-
-public class Constants {
-
-	public static Random rand;
-	
-	public static void initialize() {
-		rand = new Random();
-	}
-	
-	
-}
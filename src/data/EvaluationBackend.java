@@ -0,0 +1,40 @@
+package data;
+
+import network.BatchKernel;
+import network.ScalarKernel;
+
+public enum EvaluationBackend {
+
+	SCALAR {
+		@Override
+		public BatchKernel createKernel() {
+			return new ScalarKernel();
+		}
+	},
+	VECTOR {
+		@Override
+		public BatchKernel createKernel() {
+			try {
+				//Loaded reflectively, so the VectorKernel is never linked when jdk.incubator.vector is missing
+				return (BatchKernel) Class.forName("network.VectorKernel").getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				return SCALAR.createKernel();
+			}
+		}
+	};
+	
+	/**
+	 * Creates the kernel used for batched evaluation. Falls back to a scalar kernel if this backend is not available.
+	 * 
+	 * @return The kernel of this backend
+	 */
+	public abstract BatchKernel createKernel();
+	
+	/**
+	 * @return Whether this backend can be used on the current JVM, instead of falling back to {@link #SCALAR}
+	 */
+	public boolean isAvailable() {
+		return this == SCALAR || !(createKernel() instanceof ScalarKernel);
+	}
+	
+}
@@ -0,0 +1,174 @@
+package data;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import network.Core;
+import network.FitnessCache;
+import network.Genome;
+
+public enum EvaluationMethod {
+
+	SERIAL {
+		@Override
+		public void evaluate(Core c) {
+			NEATHeuristic heuristic = c.getHeuristic();
+			FitnessCache cache = fitnessCache(c);
+			for (Genome g : c.getGenomes()) {
+				if (needsEvaluation(g, heuristic)) {
+					evaluate(g, heuristic, cache);
+				}
+			}
+		}
+	},
+	FORK_JOIN {
+		@Override
+		public void evaluate(Core c) {
+			evaluate(c, ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism());
+		}
+	},
+	FIXED_THREAD_POOL {
+		@Override
+		public void evaluate(Core c) {
+			evaluate(c, fixedThreadPool(), THREADS);
+		}
+	},
+	VIRTUAL_THREADS {
+		@Override
+		public void evaluate(Core c) {
+			ExecutorService executor = virtualThreadExecutor();
+			if (executor == null) {
+				//Virtual threads are not available on this JVM
+				FIXED_THREAD_POOL.evaluate(c);
+				return;
+			}
+			//A heuristic that is not thread safe is copied once per worker, so then there are no more workers than cores
+			int workers = c.getHeuristic().isThreadSafe() ? c.getGenomes().size() : THREADS;
+			try {
+				evaluate(c, executor, workers);
+			} finally {
+				executor.shutdown();
+			}
+		}
+	};
+
+	public static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+	private static ExecutorService fixedThreadPool;
+
+	/**
+	 * Scores the genomes of the core that changed since they were last scored, or all genomes if the heuristic is not
+	 * deterministic
+	 * 
+	 * @param c The core whose genomes should be scored
+	 */
+	public abstract void evaluate(Core c);
+
+	/**
+	 * @param g A genome of the population
+	 * @param heuristic The heuristic of the core
+	 * @return Whether the genome has to be scored
+	 */
+	public static boolean needsEvaluation(Genome g, NEATHeuristic heuristic) {
+		return !g.isEvaluated() || !heuristic.isDeterministic();
+	}
+
+	/**
+	 * @param c The core whose genomes are scored
+	 * @return The fitness cache of the core, or null if it has none or its heuristic is not deterministic
+	 */
+	protected static FitnessCache fitnessCache(Core c) {
+		return c.getHeuristic().isDeterministic() ? c.getFitnessCache() : null;
+	}
+
+	/**
+	 * Scores a single genome, looking its fitness up in the cache first if there is one
+	 */
+	protected static void evaluate(Genome g, NEATHeuristic heuristic, FitnessCache cache) {
+		if (cache == null) {
+			g.evaluate(heuristic);
+		} else {
+			cache.evaluate(g, heuristic);
+		}
+	}
+
+	/**
+	 * Scores the genomes of the core that need it using a number of workers on the given executor. Each worker takes
+	 * the next unscored genome until all are scored. Falls back to {@link #SERIAL} if the heuristic can not be used
+	 * concurrently.
+	 * 
+	 * @param c The core whose genomes should be scored
+	 * @param executor The executor on which the workers run
+	 * @param workers The number of workers
+	 */
+	protected void evaluate(Core c, ExecutorService executor, int workers) {
+		NEATHeuristic heuristic = c.getHeuristic();
+		ArrayList<Genome> genomes = new ArrayList<>();
+		for (Genome g : c.getGenomes()) {
+			if (needsEvaluation(g, heuristic)) {
+				genomes.add(g);
+			}
+		}
+		workers = Math.min(workers, genomes.size());
+		if (workers <= 1) {
+			SERIAL.evaluate(c);
+			return;
+		}
+		FitnessCache cache = fitnessCache(c);
+		AtomicInteger next = new AtomicInteger();
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (int i = 0; i < workers; i++) {
+			NEATHeuristic h = heuristic.isThreadSafe() ? heuristic : heuristic.newInstance();
+			if (h == null) {
+				SERIAL.evaluate(c);
+				return;
+			}
+			tasks.add(() -> {
+				int index;
+				while ((index = next.getAndIncrement()) < genomes.size()) {
+					Genome g = genomes.get(index);
+					evaluate(g, h, cache);
+				}
+				return null;
+			});
+		}
+		try {
+			for (Future<Void> f : executor.invokeAll(tasks)) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Evaluation was interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Evaluation failed", e.getCause());
+		}
+	}
+
+	private static synchronized ExecutorService fixedThreadPool() {
+		if (fixedThreadPool == null) {
+			fixedThreadPool = Executors.newFixedThreadPool(THREADS, r -> {
+				Thread t = new Thread(r, "neat-evaluation");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return fixedThreadPool;
+	}
+
+	private static ExecutorService virtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+			return null;
+		}
+	}
+
+}
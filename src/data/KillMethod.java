@@ -1,56 +1,106 @@
 package data;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
 
 import network.Core;
 import network.Genome;
+import network.Species;
 
 public enum KillMethod {
 
 	BOTTOM_HALF {
 		@Override
-		public void kill(Core c) {
-			ArrayList<Genome> genomes = c.getGenomes();
-			Collections.sort(genomes);
-			int size = genomes.size();
-			for (int i = 0; i < size / 2; i++) {
-				genomes.remove(0);
-			}
+		public ArrayList<Genome> selectSurvivors(List<Genome> genomes, SplittableRandom random) {
+			ArrayList<Genome> survivors = new ArrayList<>(genomes);
+			Collections.sort(survivors);
+			survivors.subList(0, survivors.size() / 2).clear();
+			return survivors;
 		}
 	},
 	RANDOM_UNIFORM {
 		@Override
-		public void kill(Core c) {
-			ArrayList<Genome> genomes = c.getGenomes();
+		public ArrayList<Genome> selectSurvivors(List<Genome> genomes, SplittableRandom random) {
 			int size = genomes.size();
+			//Partial Fisher-Yates shuffle of the indices, the first half of which are killed
+			int[] indices = new int[size];
+			for (int i = 0; i < size; i++) {
+				indices[i] = i;
+			}
+			boolean[] killed = new boolean[size];
 			for (int i = 0; i < size / 2; i++) {
-				genomes.remove(Constants.rand.nextInt(genomes.size()));
+				int j = i + random.nextInt(size - i);
+				int index = indices[j];
+				indices[j] = indices[i];
+				indices[i] = index;
+				killed[index] = true;
 			}
+			return filter(genomes, killed);
 		}
 	},
 	PERCENTILE {
-		float sum = 0;
 		@Override
-		public void kill(Core c) {
-			ArrayList<Genome> genomes = c.getGenomes();
-			genomes.forEach(g -> sum += g.getFitness());
+		public ArrayList<Genome> selectSurvivors(List<Genome> genomes, SplittableRandom random) {
 			int size = genomes.size();
+			//Weighted sampling without replacement (Efraimidis-Spirakis): each genome gets a random key that tends to be
+			//larger for a higher fitness, the genomes with the largest keys are killed
+			long[] keys = new long[size];
+			for (int i = 0; i < size; i++) {
+				float fitness = genomes.get(i).getFitness();
+				double key = fitness > 0 ? Math.log(1 - random.nextDouble()) / fitness : Double.NEGATIVE_INFINITY;
+				keys[i] = (long) Float.floatToIntBits(0f - (float) key) << 32 | i;
+			}
+			//Non-negative floats compare like their bits, so sorting orders the genomes by descending key
+			Arrays.sort(keys);
+			boolean[] killed = new boolean[size];
 			for (int i = 0; i < size / 2; i++) {
-				float randFitness = Constants.rand.nextFloat() * sum;
-				float currentSum = 0;
-				for (Genome g : genomes) {
-					currentSum += g.getFitness();
-					if (currentSum >= randFitness) {
-						sum -= g.getFitness();
-						genomes.remove(g);
-						break;
-					}
-				}
+				killed[(int) keys[i]] = true;
 			}
+			return filter(genomes, killed);
 		}
 	};
-	
-	public abstract void kill(Core c); 
-	
+
+	/**
+	 * Kills about half of the population of the core. The survivors are selected in a single pass after which the
+	 * population and the member lists of all species are rebuilt once, so killed genomes can no longer be chosen as
+	 * parents.
+	 *
+	 * @param c The core whose population should be culled
+	 */
+	public void kill(Core c) {
+		ArrayList<Genome> genomes = c.getGenomes();
+		ArrayList<Genome> survivors = selectSurvivors(genomes, c.getRandom().get());
+		genomes.clear();
+		genomes.addAll(survivors);
+		Set<Genome> alive = Collections.newSetFromMap(new IdentityHashMap<>(survivors.size() * 2));
+		alive.addAll(survivors);
+		for (Species s : c.getSpecies()) {
+			s.retain(alive, c.getRandom().get());
+		}
+	}
+
+	/**
+	 * Selects which genomes survive, without changing the given list
+	 *
+	 * @param genomes The genomes to select from
+	 * @param random The random stream of the current generation
+	 * @return The surviving genomes
+	 */
+	public abstract ArrayList<Genome> selectSurvivors(List<Genome> genomes, SplittableRandom random);
+
+	private static ArrayList<Genome> filter(List<Genome> genomes, boolean[] killed) {
+		ArrayList<Genome> survivors = new ArrayList<>(genomes.size());
+		for (int i = 0; i < killed.length; i++) {
+			if (!killed[i]) {
+				survivors.add(genomes.get(i));
+			}
+		}
+		return survivors;
+	}
+
 }
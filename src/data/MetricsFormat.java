@@ -0,0 +1,85 @@
+package data;
+
+import network.GenerationMetrics;
+import network.GenerationMetrics.Phase;
+
+public enum MetricsFormat {
+
+	/**
+	 * Comma separated values with a header line
+	 */
+	CSV {
+		@Override
+		public String header() {
+			StringBuilder sb = new StringBuilder("generation");
+			for (Phase p : Phase.values()) {
+				sb.append(',').append(p.name().toLowerCase()).append("_nanos");
+			}
+			return sb.append(",population,evaluations,min_fitness,mean_fitness,max_fitness,species,mean_genome_size,"
+					+ "connections_created,nodes_created").toString();
+		}
+
+		@Override
+		public String format(GenerationMetrics m) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(m.getGeneration());
+			for (Phase p : Phase.values()) {
+				sb.append(',').append(m.getNanos(p));
+			}
+			return sb.append(',').append(m.getPopulationSize()).append(',').append(m.getEvaluations()).append(',')
+					.append(m.getMinFitness()).append(',').append(m.getMeanFitness()).append(',')
+					.append(m.getMaxFitness()).append(',')
+					.append(m.getSpeciesCount()).append(',').append(m.getMeanGenomeSize()).append(',')
+					.append(m.getConnectionsCreated()).append(',').append(m.getNodesCreated()).toString();
+		}
+	},
+	/**
+	 * One JSON object per line
+	 */
+	JSON_LINES {
+		@Override
+		public String header() {
+			return null;
+		}
+
+		@Override
+		public String format(GenerationMetrics m) {
+			StringBuilder sb = new StringBuilder();
+			sb.append("{\"generation\":").append(m.getGeneration()).append(",\"nanos\":{");
+			for (Phase p : Phase.values()) {
+				if (p.ordinal() > 0) {
+					sb.append(',');
+				}
+				sb.append('"').append(p.name().toLowerCase()).append("\":").append(m.getNanos(p));
+			}
+			return sb.append("},\"population\":").append(m.getPopulationSize())
+					.append(",\"evaluations\":").append(m.getEvaluations())
+					.append(",\"minFitness\":").append(number(m.getMinFitness()))
+					.append(",\"meanFitness\":").append(number(m.getMeanFitness()))
+					.append(",\"maxFitness\":").append(number(m.getMaxFitness()))
+					.append(",\"species\":").append(m.getSpeciesCount())
+					.append(",\"meanGenomeSize\":").append(number(m.getMeanGenomeSize()))
+					.append(",\"connectionsCreated\":").append(m.getConnectionsCreated())
+					.append(",\"nodesCreated\":").append(m.getNodesCreated()).append('}').toString();
+		}
+
+		/**
+		 * JSON has no representation of NaN or infinity
+		 */
+		private String number(float value) {
+			return Float.isFinite(value) ? Float.toString(value) : "null";
+		}
+	};
+
+	/**
+	 * @return The line written before the first generation, or null if there is none
+	 */
+	public abstract String header();
+
+	/**
+	 * @param metrics The measurements of a generation
+	 * @return A single line describing the generation, without line separator
+	 */
+	public abstract String format(GenerationMetrics metrics);
+
+}
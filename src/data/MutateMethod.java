@@ -2,6 +2,9 @@ package data;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
 
 import network.Core;
 import network.Genome;
@@ -11,24 +14,46 @@ public enum MutateMethod {
 
 	PRESERVE_OLD {
 		@Override
-		public void mutate(Core c) {
+		protected List<Genome> select(Core c) {
 			ArrayList<Genome> genomes = c.getGenomes();
 			int size = genomes.size();
-			for (int i = size - size / 2; i < size; i++) {
-				genomes.get(i).mutate();
-			}
+			return new ArrayList<>(genomes.subList(size - size / 2, size));
 		}
 	},
 	PRESERVE_TOP {
 		@Override
-		public void mutate(Core c) {
+		protected List<Genome> select(Core c) {
+			ArrayList<Genome> selected = new ArrayList<>();
 			for (Species s : c.getSpecies()) {
 				Genome max = Collections.max(s.getGenomes());
-				s.getGenomes().stream().filter(g -> g != max).forEach(g -> g.mutate());
+				s.getGenomes().stream().filter(g -> g != max).forEach(selected::add);
 			}
+			return selected;
 		}
 	};
-	
-	public abstract void mutate(Core c);
-	
+
+	/**
+	 * Mutates the selected genomes of the core. Weights are mutated in parallel, after which the structure of each
+	 * genome is mutated in population order so that new innovations are numbered the same way in every run.
+	 *
+	 * @param c The core whose genomes should be mutated
+	 */
+	public void mutate(Core c) {
+		List<Genome> genomes = select(c);
+		SplittableRandom[] randoms = new SplittableRandom[genomes.size()];
+		for (int i = 0; i < randoms.length; i++) {
+			randoms[i] = c.getRandom().split();
+		}
+		IntStream.range(0, randoms.length).parallel().forEach(i -> genomes.get(i).mutateWeights(randoms[i]));
+		for (int i = 0; i < randoms.length; i++) {
+			genomes.get(i).mutateStructure(randoms[i]);
+		}
+	}
+
+	/**
+	 * @param c The core whose genomes are mutated
+	 * @return The genomes to be mutated, in a fixed order
+	 */
+	protected abstract List<Genome> select(Core c);
+
 }
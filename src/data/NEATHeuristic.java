@@ -9,4 +9,33 @@ public abstract class NEATHeuristic {
 	
 	public abstract boolean checkStoppingCriteria(Core core);
 	
+	/**
+	 * Whether {@link #computeFitness} may be called by several threads at once on this instance
+	 * 
+	 * @return True if this heuristic can be shared between evaluation threads, false by default
+	 */
+	public boolean isThreadSafe() {
+		return false;
+	}
+	
+	/**
+	 * Whether {@link #computeFitness} always returns the same fitness for an unchanged genome. If so, genomes that
+	 * survive a generation without being mutated are not evaluated again.
+	 * 
+	 * @return True by default, heuristics with a random or changing fitness should return false
+	 */
+	public boolean isDeterministic() {
+		return true;
+	}
+	
+	/**
+	 * Creates a new instance of this heuristic to be used by a single evaluation thread. Only used if this heuristic
+	 * is not thread safe.
+	 * 
+	 * @return A new instance of this heuristic, or null if evaluation should not happen concurrently
+	 */
+	public NEATHeuristic newInstance() {
+		return null;
+	}
+	
 }
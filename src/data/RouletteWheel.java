@@ -0,0 +1,62 @@
+package data;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+import network.Genome;
+
+/**
+ * Fitness proportionate selection from a fixed list of genomes. The cumulative fitness is computed once, after which
+ * every draw is a binary search. Genomes with a negative fitness are never drawn, if no genome has a positive fitness
+ * all genomes are equally likely.
+ */
+public class RouletteWheel {
+
+	private final List<Genome> genomes;
+	private final double[] cumulative;
+
+	/**
+	 * @param genomes The genomes to draw from, which should not change while this wheel is used
+	 */
+	public RouletteWheel(List<Genome> genomes) {
+		this.genomes = genomes;
+		this.cumulative = new double[genomes.size()];
+		double sum = 0;
+		for (int i = 0; i < cumulative.length; i++) {
+			sum += Math.max(0, genomes.get(i).getFitness());
+			cumulative[i] = sum;
+		}
+	}
+
+	/**
+	 * Draws a genome with a chance proportional to its fitness
+	 *
+	 * @param random The random stream to draw from
+	 * @return The drawn genome, or null if there are no genomes
+	 */
+	public Genome select(SplittableRandom random) {
+		int size = cumulative.length;
+		if (size == 0)
+			return null;
+		double total = cumulative[size - 1];
+		if (total <= 0)
+			return genomes.get(random.nextInt(size));
+		double target = random.nextDouble() * total;
+		//Find the first genome whose cumulative fitness exceeds the target
+		int low = 0, high = size - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (cumulative[mid] > target) {
+				high = mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return genomes.get(low);
+	}
+
+	public double getTotalFitness() {
+		return cumulative.length == 0 ? 0 : cumulative[cumulative.length - 1];
+	}
+
+}
@@ -0,0 +1,35 @@
+package network;
+
+import data.ActivationFunction;
+
+/**
+ * The inner loops used by a {@link Phenotype} when evaluating a batch of samples. Each loop works on a contiguous row of
+ * node values, one value per sample.
+ * 
+ * @author Siemen Geurts, Thomas van den Broek
+ *
+ */
+public interface BatchKernel {
+
+	/**
+	 * Adds the weighted values of a source row to a target row
+	 * 
+	 * @param values The node values
+	 * @param target The offset of the target row
+	 * @param source The offset of the source row
+	 * @param weight The weight of the connection between both nodes
+	 * @param count The number of samples in a row
+	 */
+	public void accumulate(float[] values, int target, int source, float weight, int count);
+
+	/**
+	 * Applies an activation function to a row
+	 * 
+	 * @param af The activation function to be applied
+	 * @param values The node values
+	 * @param offset The offset of the row
+	 * @param count The number of samples in a row
+	 */
+	public void activate(ActivationFunction af, float[] values, int offset, int count);
+
+}
@@ -0,0 +1,391 @@
+package network;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+import data.ActivationFunction;
+import data.BreedMethod;
+import data.KillMethod;
+import data.MutateMethod;
+import network.NodeGene.Layer;
+
+/**
+ * Binary checkpoint of the state of a {@link Core} between two generations. The format starts with a magic number and
+ * a version and ends with a CRC32 checksum of everything before it. In between are, in this order, the settings of the
+ * run, the innovation counters, all {@link NodeGene}s and {@link ConnectionGene}s of the core, the nodes created by
+ * splitting each connection, the genomes and the species. Genomes are stored in the compact encoding of
+ * {@link CompactGenome}, a gene is just its innovation number, weight and whether it is active. All values are big
+ * endian.
+ * <p>
+ * The state is captured into a heap buffer on the thread running the core, after which writing it to disk can be left
+ * to {@link #WRITER} while evolution continues.
+ *
+ * @author Siemen Geurts, Thomas van den Broek
+ *
+ */
+public class Checkpoint {
+
+	public static final int MAGIC = 0x4E454154; // "NEAT"
+	public static final int VERSION = 1;
+
+	private static final int INITIAL_CAPACITY = 1 << 16;
+
+	/** Writes checkpoints to disk in the background, one at a time and in order */
+	static final ExecutorService WRITER = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "checkpoint-writer");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+
+	private Checkpoint() {
+	}
+
+	/**
+	 * Captures the state of a core
+	 *
+	 * @param core The core to be captured, which should not be running a generation
+	 * @return The checkpoint, ready to be written
+	 */
+	public static ByteBuffer capture(Core core) {
+		Checkpoint checkpoint = new Checkpoint();
+		checkpoint.writeCore(core);
+		CRC32 crc = new CRC32();
+		crc.update(checkpoint.buffer.array(), 0, checkpoint.buffer.position());
+		checkpoint.ensure(4);
+		checkpoint.buffer.putInt((int) crc.getValue());
+		checkpoint.buffer.flip();
+		return checkpoint.buffer;
+	}
+
+	/**
+	 * Writes a captured checkpoint to a file. The checkpoint is first written to a temporary file which then replaces
+	 * the given file, so an earlier checkpoint is never lost halfway.
+	 *
+	 * @param checkpoint The captured checkpoint
+	 * @param file The file to be written
+	 * @throws IOException If writing failed
+	 */
+	public static void write(ByteBuffer checkpoint, Path file) throws IOException {
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer data = checkpoint.duplicate();
+			while (data.hasRemaining()) {
+				channel.write(data);
+			}
+			channel.force(true);
+		}
+		try {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Restores the state of a core from a checkpoint file
+	 *
+	 * @param core A new core without any genomes
+	 * @param file The checkpoint file
+	 * @throws IOException If the file could not be read or is not a valid checkpoint
+	 */
+	public static void read(Core core, Path file) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("Checkpoint " + file + " is too large");
+			buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+			}
+			buffer.flip();
+		}
+		if (buffer.remaining() < 12 || buffer.getInt(0) != MAGIC)
+			throw new IOException(file + " is not a checkpoint");
+		int version = buffer.getInt(4);
+		if (version != VERSION)
+			throw new IOException("Unsupported checkpoint version " + version + " in " + file);
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 0, buffer.limit() - 4);
+		if ((int) crc.getValue() != buffer.getInt(buffer.limit() - 4))
+			throw new IOException("Checkpoint " + file + " is corrupt");
+		buffer.position(8);
+		buffer.limit(buffer.limit() - 4);
+		int[] counters;
+		try {
+			counters = readCore(core, buffer);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+				| NullPointerException e) {
+			throw new IOException("Checkpoint " + file + " is corrupt", e);
+		}
+		//Never hand out innovation numbers that are already in use, also if other cores run in this JVM
+		NodeGene.ai.accumulateAndGet(counters[0], Math::max);
+		ConnectionGene.ai.accumulateAndGet(counters[1], Math::max);
+	}
+
+	private void writeCore(Core core) {
+		ensure(64);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putLong(core.random.getSeed());
+		buffer.putInt(core.currentGeneration);
+		buffer.putInt(core.populationSize);
+		writeString(core.activationFunctionHidden.name());
+		writeString(core.activationFunctionOutput.name());
+		writeString(core.killMethod.name());
+		writeString(core.breedMethod.name());
+		writeString(core.mutateMethod.name());
+		ensure(20);
+		buffer.putFloat(core.speciation.getThreshold());
+		buffer.putFloat(core.speciation.getThresholdStep());
+		buffer.putInt(core.speciation.getTargetSpeciesCount());
+		buffer.putInt(NodeGene.ai.get());
+		buffer.putInt(ConnectionGene.ai.get());
+
+		ensure(4 + core.nodes.size() * 5);
+		buffer.putInt(core.nodes.size());
+		for (NodeGene ng : core.nodes.values()) {
+			buffer.putInt(ng.getInnovationNumber());
+			buffer.put((byte) ng.getLayer().ordinal());
+		}
+		writeNodes(core.inputNodes);
+		writeNodes(core.outputNodes);
+
+		ensure(4 + core.connections.size() * 12);
+		buffer.putInt(core.connections.size());
+		for (ConnectionGene cg : core.connections.values()) {
+			buffer.putInt(cg.getInnovationNumber());
+			buffer.putInt(cg.getInput().getInnovationNumber());
+			buffer.putInt(cg.getOutput().getInnovationNumber());
+		}
+
+		Map<Integer, ArrayList<NodeGene>> splitNodes = core.innovations.getSplitNodes();
+		ensure(4);
+		buffer.putInt(splitNodes.size());
+		for (Map.Entry<Integer, ArrayList<NodeGene>> entry : splitNodes.entrySet()) {
+			ensure(4);
+			buffer.putInt(entry.getKey());
+			writeNodes(entry.getValue());
+		}
+
+		IdentityHashMap<Genome, Integer> indices = new IdentityHashMap<>();
+		ensure(4);
+		buffer.putInt(core.genomes.size());
+		for (Genome g : core.genomes) {
+			indices.put(g, indices.size());
+			writeGenome(g);
+		}
+
+		ensure(4);
+		buffer.putInt(core.species.size());
+		for (Species s : core.species) {
+			//The leader is normally part of the population, otherwise it is stored in place
+			Integer leader = indices.get(s.getLeaderGenome());
+			ensure(4);
+			buffer.putInt(leader == null ? -1 : leader);
+			if (leader == null) {
+				writeGenome(s.getLeaderGenome());
+			}
+			//Members that are no longer part of the population are left out
+			ensure(4 + s.getGenomes().size() * 4);
+			int countPosition = buffer.position();
+			buffer.putInt(0);
+			int count = 0;
+			for (Genome g : s.getGenomes()) {
+				Integer member = indices.get(g);
+				if (member != null) {
+					buffer.putInt(member);
+					count++;
+				}
+			}
+			buffer.putInt(countPosition, count);
+		}
+	}
+
+	/**
+	 * @return The node and connection innovation counters of the checkpoint, which are only applied once the whole
+	 *         checkpoint has been read
+	 */
+	private static int[] readCore(Core core, ByteBuffer buffer) {
+		core.random = new RandomService(buffer.getLong());
+		core.currentGeneration = buffer.getInt();
+		core.populationSize = buffer.getInt();
+		core.activationFunctionHidden = ActivationFunction.valueOf(readString(buffer));
+		core.activationFunctionOutput = ActivationFunction.valueOf(readString(buffer));
+		core.killMethod = KillMethod.valueOf(readString(buffer));
+		core.breedMethod = BreedMethod.valueOf(readString(buffer));
+		core.mutateMethod = MutateMethod.valueOf(readString(buffer));
+		core.speciation.setThreshold(buffer.getFloat());
+		core.speciation.setThresholdStep(buffer.getFloat());
+		core.speciation.setTargetSpeciesCount(buffer.getInt());
+		int[] counters = { buffer.getInt(), buffer.getInt() };
+
+		Layer[] layers = Layer.values();
+		int nodeCount = buffer.getInt();
+		for (int i = 0; i < nodeCount; i++) {
+			int innovation = buffer.getInt();
+			int layer = buffer.get();
+			if (layer < 0 || layer >= layers.length)
+				throw new IllegalArgumentException("Unknown layer " + layer);
+			NodeGene ng = new NodeGene(innovation, layers[layer]);
+			core.nodes.put(ng.getInnovationNumber(), ng);
+		}
+		core.inputNodes.addAll(readNodes(core, buffer));
+		core.outputNodes.addAll(readNodes(core, buffer));
+
+		int connectionCount = buffer.getInt();
+		for (int i = 0; i < connectionCount; i++) {
+			int innovation = buffer.getInt();
+			NodeGene input = core.nodes.get(buffer.getInt());
+			NodeGene output = core.nodes.get(buffer.getInt());
+			core.innovations.register(ConnectionGene.restore(input, output, innovation));
+		}
+
+		int splitCount = buffer.getInt();
+		for (int i = 0; i < splitCount; i++) {
+			int splitInnovation = buffer.getInt();
+			for (NodeGene ng : readNodes(core, buffer)) {
+				core.innovations.registerSplitNode(splitInnovation, ng);
+			}
+		}
+
+		int genomeCount = buffer.getInt();
+		for (int i = 0; i < genomeCount; i++) {
+			core.genomes.add(readGenome(core, buffer));
+		}
+
+		int speciesCount = buffer.getInt();
+		for (int i = 0; i < speciesCount; i++) {
+			int leader = buffer.getInt();
+			Species s = new Species(leader < 0 ? readGenome(core, buffer) : core.genomes.get(leader));
+			s.clearGenomes();
+			int memberCount = buffer.getInt();
+			for (int j = 0; j < memberCount; j++) {
+				s.addGenome(core.genomes.get(buffer.getInt()));
+			}
+			core.species.add(s);
+		}
+		return counters;
+	}
+
+	/**
+	 * Writes a genome as its fitness, its nodes in the order the genome holds them, and its genes in the compact
+	 * encoding. Keeping the order of the nodes makes a resumed run mutate exactly like the original.
+	 */
+	private void writeGenome(Genome g) {
+		CompactGenome compact = CompactGenome.of(g);
+		int size = compact.size();
+		ArrayList<NodeGene> nodes = g.getNodes();
+		ensure(12 + nodes.size() * 4 + size * 9);
+		buffer.putFloat(g.getFitness());
+		buffer.putInt(nodes.size());
+		for (NodeGene ng : nodes) {
+			buffer.putInt(ng.getInnovationNumber());
+		}
+		buffer.putInt(size);
+		buffer.asIntBuffer().put(compact.getInnovations(), 0, size);
+		buffer.position(buffer.position() + size * 4);
+		buffer.asFloatBuffer().put(compact.getWeights(), 0, size);
+		buffer.position(buffer.position() + size * 4);
+		boolean[] enabled = compact.getEnabled();
+		for (int i = 0; i < size; i++) {
+			buffer.put(enabled[i] ? (byte) 1 : (byte) 0);
+		}
+	}
+
+	private static Genome readGenome(Core core, ByteBuffer buffer) {
+		float fitness = buffer.getFloat();
+		Genome genome = new Genome(core);
+		genome.addNodes(readNodes(core, buffer));
+		int size = readCount(buffer, 9);
+		int[] innovations = new int[size];
+		float[] weights = new float[size];
+		buffer.asIntBuffer().get(innovations);
+		buffer.position(buffer.position() + size * 4);
+		buffer.asFloatBuffer().get(weights);
+		buffer.position(buffer.position() + size * 4);
+		ArrayList<ConnectionGene> connections = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			ConnectionGene cg = core.connections.get(innovations[i]).copy();
+			cg.setWeight(weights[i]);
+			cg.setActive(buffer.get() != 0);
+			connections.add(cg);
+		}
+		genome.addConnections(connections);
+		genome.setFitness(fitness);
+		return genome;
+	}
+
+	private void writeNodes(ArrayList<NodeGene> nodes) {
+		ensure(4 + nodes.size() * 4);
+		buffer.putInt(nodes.size());
+		for (NodeGene ng : nodes) {
+			buffer.putInt(ng.getInnovationNumber());
+		}
+	}
+
+	private static ArrayList<NodeGene> readNodes(Core core, ByteBuffer buffer) {
+		int count = readCount(buffer, 4);
+		ArrayList<NodeGene> nodes = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			NodeGene ng = core.nodes.get(buffer.getInt());
+			if (ng == null)
+				throw new IllegalArgumentException("Unknown node");
+			nodes.add(ng);
+		}
+		return nodes;
+	}
+
+	private void writeString(String s) {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		ensure(2 + bytes.length);
+		buffer.putShort((short) bytes.length);
+		buffer.put(bytes);
+	}
+
+	/**
+	 * Reads the number of entries that follow, which can not be more than fit in the rest of the checkpoint
+	 */
+	private static int readCount(ByteBuffer buffer, int entrySize) {
+		int count = buffer.getInt();
+		if (count < 0 || count > buffer.remaining() / entrySize)
+			throw new IllegalArgumentException("Invalid count " + count);
+		return count;
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Makes sure the buffer can hold a number of additional bytes, doubling its capacity if needed
+	 */
+	private void ensure(int bytes) {
+		if (buffer.remaining() >= bytes)
+			return;
+		int capacity = Math.max(buffer.capacity() * 2, buffer.position() + bytes);
+		ByteBuffer larger = ByteBuffer.allocate(capacity);
+		buffer.flip();
+		larger.put(buffer);
+		buffer = larger;
+	}
+
+}
@@ -0,0 +1,625 @@
+package network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import network.NodeGene.Layer;
+
+/**
+ * A genome stored as parallel primitive arrays instead of {@link ConnectionGene} objects. Gene i connects the node
+ * {@code inputs[i]} to the node {@code outputs[i]} (both innovation numbers of {@link NodeGene}s), and has innovation
+ * number {@code innovations[i]}, weight {@code weights[i]} and is active if {@code enabled[i]}. The genes are always
+ * sorted by innovation number. Breeding, mutating, distance computation and evaluation all work on the arrays directly,
+ * which keeps large populations small and free of pointer chasing.
+ *
+ * @author Siemen Geurts, Thomas van den Broek
+ *
+ */
+public class CompactGenome implements Comparable<CompactGenome> {
+
+	private static final int INITIAL_CAPACITY = 8;
+
+	private final Core core;
+	private int size;
+	private int[] innovations;
+	private int[] inputs;
+	private int[] outputs;
+	private float[] weights;
+	private boolean[] enabled;
+	private float fitness;
+	private Phenotype phenotype;
+
+	/**
+	 * General constructor for creating an empty genome
+	 *
+	 * @param core The core from which all variables and information are gained
+	 */
+	public CompactGenome(Core core) {
+		this(core, INITIAL_CAPACITY);
+	}
+
+	private CompactGenome(Core core, int capacity) {
+		this.core = core;
+		capacity = Math.max(capacity, 1);
+		innovations = new int[capacity];
+		inputs = new int[capacity];
+		outputs = new int[capacity];
+		weights = new float[capacity];
+		enabled = new boolean[capacity];
+	}
+
+	/**
+	 * Constructor used for restoring a genome from its arrays, the genes must be sorted by innovation number
+	 *
+	 * @param core The core from which all variables and information are gained
+	 * @param size The number of genes
+	 * @param innovations The innovation number of each gene
+	 * @param inputs The innovation number of the input node of each gene
+	 * @param outputs The innovation number of the output node of each gene
+	 * @param weights The weight of each gene
+	 * @param enabled Whether each gene is active
+	 */
+	public CompactGenome(Core core, int size, int[] innovations, int[] inputs, int[] outputs, float[] weights,
+			boolean[] enabled) {
+		this.core = core;
+		this.size = size;
+		this.innovations = innovations;
+		this.inputs = inputs;
+		this.outputs = outputs;
+		this.weights = weights;
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Converts a genome to its compact encoding
+	 *
+	 * @param genome The genome to be converted
+	 * @return The compact genome holding the same genes and fitness
+	 */
+	public static CompactGenome of(Genome genome) {
+		ArrayList<ConnectionGene> connections = genome.getConnections();
+		CompactGenome cg = new CompactGenome(genome.getCore(), connections.size());
+		for (ConnectionGene c : connections) {
+			cg.append(c.getInnovationNumber(), c.getInput().getInnovationNumber(), c.getOutput().getInnovationNumber(),
+					c.getWeight(), c.isActive());
+		}
+		cg.fitness = genome.getFitness();
+		return cg;
+	}
+
+	/**
+	 * Converts this genome back to a {@link Genome} of {@link ConnectionGene}s
+	 *
+	 * @return The genome holding the same genes and fitness
+	 */
+	public Genome toGenome() {
+		Genome genome = new Genome(core);
+		genome.addNodes(core.inputNodes);
+		genome.addNodes(core.outputNodes);
+		ArrayList<ConnectionGene> connections = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			ConnectionGene c = core.connections.get(innovations[i]).copy();
+			c.setWeight(weights[i]);
+			c.setActive(enabled[i]);
+			connections.add(c);
+			for (NodeGene ng : new NodeGene[] { c.getInput(), c.getOutput() }) {
+				if (ng.getLayer() == Layer.HIDDEN && !genome.getNodes().contains(ng)) {
+					genome.addNode(ng);
+				}
+			}
+		}
+		genome.addConnections(connections);
+		genome.setFitness(fitness);
+		return genome;
+	}
+
+	/**
+	 * Adds a gene after all other genes, its innovation number must be greater than that of all other genes
+	 */
+	private void append(int innovation, int input, int output, float weight, boolean active) {
+		ensureCapacity(size + 1);
+		innovations[size] = innovation;
+		inputs[size] = input;
+		outputs[size] = output;
+		weights[size] = weight;
+		enabled[size] = active;
+		size++;
+	}
+
+	/**
+	 * Adds a gene at its sorted position, if this genome does not contain it yet
+	 *
+	 * @return Whether the gene was added
+	 */
+	private boolean insert(int innovation, int input, int output, float weight, boolean active) {
+		int index = indexOf(innovation);
+		if (index >= 0)
+			return false;
+		index = -index - 1;
+		ensureCapacity(size + 1);
+		int moved = size - index;
+		System.arraycopy(innovations, index, innovations, index + 1, moved);
+		System.arraycopy(inputs, index, inputs, index + 1, moved);
+		System.arraycopy(outputs, index, outputs, index + 1, moved);
+		System.arraycopy(weights, index, weights, index + 1, moved);
+		System.arraycopy(enabled, index, enabled, index + 1, moved);
+		innovations[index] = innovation;
+		inputs[index] = input;
+		outputs[index] = output;
+		weights[index] = weight;
+		enabled[index] = active;
+		size++;
+		phenotype = null;
+		return true;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= innovations.length)
+			return;
+		int newCapacity = Math.max(capacity, innovations.length * 2);
+		innovations = Arrays.copyOf(innovations, newCapacity);
+		inputs = Arrays.copyOf(inputs, newCapacity);
+		outputs = Arrays.copyOf(outputs, newCapacity);
+		weights = Arrays.copyOf(weights, newCapacity);
+		enabled = Arrays.copyOf(enabled, newCapacity);
+	}
+
+	/**
+	 * @param innovation The innovation number of a gene
+	 * @return The index of the gene, or (-(insertion point) - 1) if this genome does not contain it
+	 */
+	private int indexOf(int innovation) {
+		return Arrays.binarySearch(innovations, 0, size, innovation);
+	}
+
+	/**
+	 * Breed this genome with another to create a child genome of matching, disjoint and excess genes
+	 *
+	 * @param p The other genome parent
+	 * @param random The random stream of the child
+	 * @return The child genome that was bred from this and the given parent
+	 */
+	public CompactGenome breed(CompactGenome p, SplittableRandom random) {
+		if (p.fitness > fitness) {
+			return breed(p, this, false, random);
+		}
+		if (p.fitness < fitness) {
+			return breed(this, p, false, random);
+		}
+		return breed(this, p, true, random);
+	}
+
+	/**
+	 * Breed two genomes by merging their sorted genes. Matching genes take the weight of a random parent and are active
+	 * if they are active in the better parent, disjoint and excess genes are taken from the better parent, or from both
+	 * at random if neither parent is fitter. This is the same rule as {@link Genome#breed}.
+	 *
+	 * @param betterParent The parent genome with the higher fitness (if applicable)
+	 * @param worseParent The parent genome with the lower fitness (if applicable)
+	 * @param randomize True if no parent is fitter than the other, else false.
+	 * @param random The random stream of the child
+	 * @return The child genome that was bred from the given parents
+	 */
+	private static CompactGenome breed(CompactGenome betterParent, CompactGenome worseParent, boolean randomize,
+			SplittableRandom random) {
+		CompactGenome child = new CompactGenome(betterParent.core, betterParent.size);
+		//Disjoint and excess genes that are only added if they do not cause a loop, referred to by parent and index
+		ArrayList<CompactGenome> candidateParents = new ArrayList<>();
+		ArrayList<Integer> candidateIndices = new ArrayList<>();
+		int i = 0, j = 0;
+		while (i < betterParent.size || j < worseParent.size) {
+			int innovation1 = i < betterParent.size ? betterParent.innovations[i] : Integer.MAX_VALUE;
+			int innovation2 = j < worseParent.size ? worseParent.innovations[j] : Integer.MAX_VALUE;
+			if (innovation1 == innovation2) {
+				float weight = random.nextBoolean() ? betterParent.weights[i] : worseParent.weights[j];
+				child.append(innovation1, betterParent.inputs[i], betterParent.outputs[i], weight,
+						betterParent.enabled[i]);
+				i++;
+				j++;
+			} else if (innovation1 < innovation2) {
+				if (!randomize) {
+					child.append(innovation1, betterParent.inputs[i], betterParent.outputs[i],
+							betterParent.weights[i], betterParent.enabled[i]);
+				} else if (random.nextBoolean()) {
+					candidateParents.add(betterParent);
+					candidateIndices.add(i);
+				}
+				i++;
+			} else {
+				if (randomize && random.nextBoolean()) {
+					candidateParents.add(worseParent);
+					candidateIndices.add(j);
+				}
+				j++;
+			}
+		}
+		if (candidateParents.isEmpty())
+			return child;
+		//The adjacency also covers the nodes of the candidates, so it can take every candidate gene
+		int candidateCount = candidateParents.size();
+		int[] nodes = new int[(child.size + candidateCount) * 2];
+		System.arraycopy(child.inputs, 0, nodes, 0, child.size);
+		System.arraycopy(child.outputs, 0, nodes, child.size, child.size);
+		for (int c = 0; c < candidateCount; c++) {
+			CompactGenome parent = candidateParents.get(c);
+			int index = candidateIndices.get(c);
+			nodes[child.size * 2 + c * 2] = parent.inputs[index];
+			nodes[child.size * 2 + c * 2 + 1] = parent.outputs[index];
+		}
+		Adjacency adjacency = child.createAdjacency(sortedUnique(nodes, nodes.length));
+		for (int c = 0; c < candidateCount; c++) {
+			CompactGenome parent = candidateParents.get(c);
+			int index = candidateIndices.get(c);
+			int input = parent.inputs[index];
+			int output = parent.outputs[index];
+			if (!adjacency.containsPath(output, input)) {
+				adjacency.add(input, output);
+				child.insert(parent.innovations[index], input, output, parent.weights[index], parent.enabled[index]);
+			}
+		}
+		return child;
+	}
+
+	/**
+	 * Calculates the distance between this and a given genome in a single merge of both sorted gene arrays
+	 *
+	 * @param genome The genome to be compared with
+	 * @return The distance between this and the given genome
+	 */
+	public float computeDistance(CompactGenome genome) {
+		int i = 0, j = 0;
+		int matchingCount = 0;
+		int disjointCount = 0;
+		float weightDifference = 0;
+		while (i < size && j < genome.size) {
+			int innovation1 = innovations[i];
+			int innovation2 = genome.innovations[j];
+			if (innovation1 == innovation2) {
+				matchingCount++;
+				weightDifference += Math.abs(weights[i] - genome.weights[j]);
+				i++;
+				j++;
+			} else if (innovation1 < innovation2) {
+				disjointCount++;
+				i++;
+			} else {
+				disjointCount++;
+				j++;
+			}
+		}
+		int excessCount = (size - i) + (genome.size - j);
+		float weightAverage = matchingCount == 0 ? 0 : weightDifference / matchingCount;
+		return excessCount * Genome.EXCESS_WEIGHT + disjointCount * Genome.DISJOINT_WEIGHT
+				+ weightAverage * Genome.MATCHING_WEIGHT;
+	}
+
+	/**
+	 * Mutates this genome by calling {@link #mutateNodeGene}, {@link #mutateConnectionGene} and mutating each gene's
+	 * weight.
+	 *
+	 * @param random The random stream of this genome for the current generation
+	 */
+	public void mutate(SplittableRandom random) {
+		boolean structureChanged = mutateNodeGene(random);
+		for (int i = 0; i < size; i++) {
+			weights[i] = ConnectionGene.mutateWeight(weights[i], random);
+		}
+		structureChanged |= mutateConnectionGene(random);
+		if (structureChanged) {
+			phenotype = null;
+		} else if (phenotype != null) {
+			phenotype.updateWeights(weights);
+		}
+	}
+
+	/**
+	 * Mutates this genome in the sense that a node is added in the center of a random active gene
+	 *
+	 * @param random The random stream of this genome for the current generation
+	 * @return Whether a node was added
+	 */
+	public boolean mutateNodeGene(SplittableRandom random) {
+		if (size == 0)
+			return false;
+		if (random.nextFloat() >= Genome.NODE_PROB)
+			return false;
+
+		int activeCount = 0;
+		for (int i = 0; i < size; i++) {
+			if (enabled[i])
+				activeCount++;
+		}
+		if (activeCount == 0)
+			return false;
+		int split = -1;
+		for (int k = random.nextInt(activeCount); k >= 0; k--) {
+			do {
+				split++;
+			} while (!enabled[split]);
+		}
+		enabled[split] = false;
+		int input = inputs[split];
+		int output = outputs[split];
+		float weight = weights[split];
+
+		int[] nodes = getNodes();
+		NodeGene ng = core.innovations.getSplitNode(innovations[split],
+				n -> Arrays.binarySearch(nodes, n.getInnovationNumber()) >= 0);
+		ConnectionGene inputConnection = core.innovations.getConnection(core.nodes.get(input), ng);
+		insert(inputConnection.getInnovationNumber(), input, ng.getInnovationNumber(), 1, true);
+		ConnectionGene outputConnection = core.innovations.getConnection(ng, core.nodes.get(output));
+		insert(outputConnection.getInnovationNumber(), ng.getInnovationNumber(), output, weight, true);
+		phenotype = null;
+		return true;
+	}
+
+	/**
+	 * Mutates this genome in the sense that a gene between two random, unconnected nodes is added
+	 *
+	 * @param random The random stream of this genome for the current generation
+	 * @return Whether a gene was added
+	 */
+	public boolean mutateConnectionGene(SplittableRandom random) {
+		if (random.nextFloat() >= Genome.CONNECTION_PROB)
+			return false;
+
+		int[] nodes = getNodes();
+		int startCount = 0, endCount = 0;
+		int[] startNodes = new int[nodes.length];
+		int[] endNodes = new int[nodes.length];
+		for (int n : nodes) {
+			Layer layer = core.nodes.get(n).getLayer();
+			if (layer != Layer.OUTPUT)
+				startNodes[startCount++] = n;
+			if (layer != Layer.INPUT)
+				endNodes[endCount++] = n;
+		}
+		if (startCount == 0 || endCount == 0)
+			return false;
+
+		//Only built once a candidate gene is not part of this genome yet
+		Adjacency adjacency = null;
+		for (int attempt = 0; attempt < Genome.CONNECTION_ATTEMPTS; attempt++) {
+			int start = startNodes[random.nextInt(startCount)];
+			int end = endNodes[random.nextInt(endCount)];
+			if (start == end)
+				continue;
+			NodeGene startNode = core.nodes.get(start);
+			NodeGene endNode = core.nodes.get(end);
+			ConnectionGene existing = core.innovations.findConnection(startNode, endNode);
+			if (existing != null && indexOf(existing.getInnovationNumber()) >= 0)
+				continue;
+			if (adjacency == null) {
+				adjacency = createAdjacency(nodes);
+			}
+			if (adjacency.containsPath(end, start))
+				continue;
+			ConnectionGene cg = core.innovations.getConnection(startNode, endNode);
+			insert(cg.getInnovationNumber(), start, end, ConnectionGene.randomWeight(random), true);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Builds the adjacency of the genes of this genome, which is not kept so a compact genome stays as small as its
+	 * arrays
+	 *
+	 * @param nodes The sorted innovation numbers of all nodes the adjacency has to hold, at least those of this genome
+	 * @return The adjacency of the genes of this genome
+	 */
+	private Adjacency createAdjacency(int[] nodes) {
+		Adjacency adjacency = new Adjacency(nodes);
+		for (int i = 0; i < size; i++) {
+			adjacency.add(inputs[i], outputs[i]);
+		}
+		return adjacency;
+	}
+
+	/**
+	 * @return The sorted innovation numbers of all nodes in this genome, including all input and output nodes
+	 */
+	public int[] getNodes() {
+		int[] nodes = new int[2 * size + core.inputNodes.size() + core.outputNodes.size()];
+		int count = 0;
+		for (NodeGene ng : core.inputNodes) {
+			nodes[count++] = ng.getInnovationNumber();
+		}
+		for (NodeGene ng : core.outputNodes) {
+			nodes[count++] = ng.getInnovationNumber();
+		}
+		System.arraycopy(inputs, 0, nodes, count, size);
+		System.arraycopy(outputs, 0, nodes, count + size, size);
+		return sortedUnique(nodes, nodes.length);
+	}
+
+	/**
+	 * Sorts values and removes the duplicates, reusing the given array
+	 *
+	 * @param values The values to be sorted
+	 * @param count The number of values in the array
+	 * @return The distinct values in ascending order
+	 */
+	private static int[] sortedUnique(int[] values, int count) {
+		Arrays.sort(values, 0, count);
+		int unique = 0;
+		for (int i = 0; i < count; i++) {
+			if (unique == 0 || values[i] != values[unique - 1]) {
+				values[unique++] = values[i];
+			}
+		}
+		return Arrays.copyOf(values, unique);
+	}
+
+	/**
+	 * Finds this genome's output given an input using its compiled {@link Phenotype}.
+	 *
+	 * @param input The set of values to be used in the input layer
+	 * @return The values of the nodes in the output layer
+	 */
+	public float[] computeOutput(float[] input) {
+		return getPhenotype().computeOutput(input);
+	}
+
+	/**
+	 * Finds this genome's output for a whole set of inputs in a single pass over its compiled {@link Phenotype}.
+	 *
+	 * @param inputs The values to be used in the input layer of all samples in row-major order
+	 * @param samples The number of samples
+	 * @return The values of the nodes in the output layer of all samples in row-major order
+	 */
+	public float[] computeOutputs(float[] inputs, int samples) {
+		return getPhenotype().computeOutputs(inputs, samples);
+	}
+
+	/**
+	 * Returns the compiled network of this genome, compiling it first if the structure has changed since the last call
+	 *
+	 * @return The {@link Phenotype} of this genome
+	 */
+	public synchronized Phenotype getPhenotype() {
+		if (phenotype == null) {
+			phenotype = Phenotype.compile(this);
+		}
+		return phenotype;
+	}
+
+	public Core getCore() {
+		return core;
+	}
+
+	/**
+	 * @return The number of genes in this genome
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * The arrays below may be larger than {@link #size()}, only the first size elements are genes
+	 */
+	public int[] getInnovations() {
+		return innovations;
+	}
+
+	public int[] getInputs() {
+		return inputs;
+	}
+
+	public int[] getOutputs() {
+		return outputs;
+	}
+
+	public float[] getWeights() {
+		return weights;
+	}
+
+	public boolean[] getEnabled() {
+		return enabled;
+	}
+
+	public float getFitness() {
+		return fitness;
+	}
+
+	public void setFitness(float fitness) {
+		this.fitness = fitness;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("CompactGenome[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append(innovations[i]).append(" [").append(inputs[i]).append(" - ").append(outputs[i]).append(" | ")
+					.append(weights[i]).append(" | ").append(enabled[i]).append("]");
+		}
+		return sb.append("], Fitness: ").append(fitness).toString();
+	}
+
+	@Override
+	public int compareTo(CompactGenome g) {
+		return Float.compare(fitness, g.fitness);
+	}
+
+	/**
+	 * The genes of a genome as lists of outgoing connections per node, built once per operation that adds genes so
+	 * checking for a loop only follows the connections reachable from a node instead of scanning all genes for every
+	 * node it visits. Nodes are referred to by their position in a sorted array of innovation numbers.
+	 */
+	private static final class Adjacency {
+
+		private final int[] nodes;
+		private final int[][] targets;
+		private final int[] counts;
+		/** The search that last visited each node, so the marks never have to be cleared */
+		private final int[] visited;
+		private final int[] stack;
+		private int search;
+
+		/**
+		 * @param nodes The sorted innovation numbers of all nodes that may be connected
+		 */
+		private Adjacency(int[] nodes) {
+			this.nodes = nodes;
+			targets = new int[nodes.length][];
+			counts = new int[nodes.length];
+			visited = new int[nodes.length];
+			stack = new int[nodes.length];
+		}
+
+		/**
+		 * Adds a connection between two nodes, both must be part of this adjacency
+		 *
+		 * @param from The innovation number of the input node of the connection
+		 * @param to The innovation number of the output node of the connection
+		 */
+		private void add(int from, int to) {
+			int f = Arrays.binarySearch(nodes, from);
+			int[] list = targets[f];
+			if (list == null) {
+				targets[f] = list = new int[2];
+			} else if (counts[f] == list.length) {
+				targets[f] = list = Arrays.copyOf(list, list.length * 2);
+			}
+			list[counts[f]++] = Arrays.binarySearch(nodes, to);
+		}
+
+		/**
+		 * Checks whether the connections form a path between two nodes
+		 *
+		 * @param start The innovation number of the first node of the path
+		 * @param end The innovation number of the last node of the path
+		 * @return Whether there is a path from start to end
+		 */
+		private boolean containsPath(int start, int end) {
+			if (start == end)
+				return true;
+			int s = Arrays.binarySearch(nodes, start);
+			int e = Arrays.binarySearch(nodes, end);
+			if (s < 0 || e < 0)
+				return false;
+			search++;
+			int top = 0;
+			stack[top++] = s;
+			visited[s] = search;
+			while (top > 0) {
+				int n = stack[--top];
+				for (int i = 0; i < counts[n]; i++) {
+					int next = targets[n][i];
+					if (next == e)
+						return true;
+					if (visited[next] != search) {
+						visited[next] = search;
+						stack[top++] = next;
+					}
+				}
+			}
+			return false;
+		}
+
+	}
+
+}
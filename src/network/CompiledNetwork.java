@@ -0,0 +1,22 @@
+package network;
+
+/**
+ * A network evaluator generated at runtime by the {@link NetworkCompiler} for a single {@link Phenotype}, with its
+ * weights as constants and every node evaluated by straight-line code
+ *
+ * @author Siemen Geurts, Thomas van den Broek
+ *
+ */
+interface CompiledNetwork {
+
+	/**
+	 * Computes the output of the network for a single sample
+	 *
+	 * @param input The array holding the input values of the sample
+	 * @param inputOffset The index of the first input value of the sample
+	 * @param output The array in which the output values are stored
+	 * @param outputOffset The index at which the first output value is stored
+	 */
+	void computeOutput(float[] input, int inputOffset, float[] output, int outputOffset);
+
+}
@@ -1,10 +1,9 @@
 package network;
 
 
+import java.util.SplittableRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import data.Constants;
-
 /**
  * 
  * Represents a directed connection (input to output) between two {@link NodeGene}s with a certain weight. Can be active or inactive.
@@ -28,9 +27,16 @@ public class ConnectionGene implements Comparable<ConnectionGene> {
 	private boolean active;
 	
 	private float weight;
+	
+	/**
+	 * Whether this gene is used by more than one genome, in which case it is copied before being changed. Only set
+	 * while breeding, which is separated from mutating by the end of a parallel stream.
+	 */
+	private boolean shared;
 
 	/**
-	 * Base constructor method for creating a connection between two nodes
+	 * Base constructor method for creating a connection between two nodes. The weight starts at zero, genomes using the
+	 * connection set their own weight.
 	 * 
 	 * @param input The input node (start point)
 	 * @param output The output node (end point)
@@ -42,7 +48,6 @@ public class ConnectionGene implements Comparable<ConnectionGene> {
 		this.input = input;
 		this.output = output;
 		this.active = true;
-		mutateWeightRandom();
 	}
 
 	/**
@@ -52,36 +57,65 @@ public class ConnectionGene implements Comparable<ConnectionGene> {
 	 * @param output The original connection's output
 	 * @param innovationNumber The innovation number of the original connection
 	 * @param weight The weight of the original connection
+	 * @param active Whether the original connection is active
 	 */
-	private ConnectionGene(NodeGene input, NodeGene output, int innovationNumber, float weight) {
+	private ConnectionGene(NodeGene input, NodeGene output, int innovationNumber, float weight, boolean active) {
 		this.input = input;
 		this.output = output;
 		this.innovationNumber = innovationNumber;
-		this.active = true;
+		this.active = active;
 		this.weight = weight;
 	}
 	
+	/**
+	 * Restores a connection with a known innovation number
+	 * 
+	 * @param input The input node (start point)
+	 * @param output The output node (end point)
+	 * @param innovationNumber The innovation number of the connection
+	 * @return The restored connection
+	 */
+	static ConnectionGene restore(NodeGene input, NodeGene output, int innovationNumber) {
+		return new ConnectionGene(input, output, innovationNumber, 0, true);
+	}
+	
 	/**
 	 * Mutate this connection by mutating its weight
+	 * 
+	 * @param random The random stream of the genome being mutated
+	 */
+	public void mutate(SplittableRandom random) {
+		this.weight = mutateWeight(weight, random);
+	}
+	
+	/**
+	 * Mutates a weight either by some increment or decrement or entirely randomly. Shared with genomes that store their
+	 * weights as primitives, like {@link CompactGenome}.
+	 * 
+	 * @param weight The weight to be mutated
+	 * @param random The random stream of the genome being mutated
+	 * @return The mutated weight
 	 */
-	public void mutate() {
-		if (Constants.rand.nextFloat() >= MUTATE_PROB)
-			return;
-		// Mutate weight
-		if (!mutateWeightUniform()) {
-			mutateWeightRandom();
+	static float mutateWeight(float weight, SplittableRandom random) {
+		if (random.nextFloat() >= MUTATE_PROB)
+			return weight;
+		if (random.nextDouble() < WEIGHT_PROB) {
+			float change = UNIFORM_WEIGHT_CHANGE * random.nextFloat();
+			return weight + change * (random.nextBoolean() ? -1 : 1);
 		}
+		return randomWeight(random);
 	}
 	
 	/**
 	 * Mutate weight based on some increment or decrement
 	 * 
+	 * @param random The random stream of the genome being mutated
 	 * @return Whether the connection weight was actually changed
 	 */
-	public boolean mutateWeightUniform() {
-		if (Constants.rand.nextDouble() < WEIGHT_PROB) {
-			float change = UNIFORM_WEIGHT_CHANGE * Constants.rand.nextFloat();
-			this.weight += change * (Constants.rand.nextBoolean() ? -1 : 1);
+	public boolean mutateWeightUniform(SplittableRandom random) {
+		if (random.nextDouble() < WEIGHT_PROB) {
+			float change = UNIFORM_WEIGHT_CHANGE * random.nextFloat();
+			this.weight += change * (random.nextBoolean() ? -1 : 1);
 			return true;
 		}
 		return false;
@@ -89,9 +123,19 @@ public class ConnectionGene implements Comparable<ConnectionGene> {
 
 	/**
 	 * Mutate weight entirely randomly between a lower and upper bound
+	 * 
+	 * @param random The random stream of the genome being mutated
 	 */
-	public void mutateWeightRandom() {
-		this.weight = LOWER_WEIGHT_BOUND + (UPPER_WEIGHT_BOUND - LOWER_WEIGHT_BOUND) * Constants.rand.nextFloat();
+	public void mutateWeightRandom(SplittableRandom random) {
+		this.weight = randomWeight(random);
+	}
+	
+	/**
+	 * @param random The random stream to draw from
+	 * @return A random weight between the lower and upper bound
+	 */
+	static float randomWeight(SplittableRandom random) {
+		return LOWER_WEIGHT_BOUND + (UPPER_WEIGHT_BOUND - LOWER_WEIGHT_BOUND) * random.nextFloat();
 	}
 
 	public int getInnovationNumber() {
@@ -122,8 +166,25 @@ public class ConnectionGene implements Comparable<ConnectionGene> {
 		return this.active;
 	}
 	
+	/**
+	 * @return Whether this gene is used by more than one genome
+	 */
+	public boolean isShared() {
+		return shared;
+	}
+	
+	/**
+	 * Marks this gene as used by more than one genome, after which genomes should copy it before changing it
+	 */
+	public void markShared() {
+		shared = true;
+	}
+	
+	/**
+	 * @return A copy of this gene that is not shared
+	 */
 	public ConnectionGene copy() {
-		return new ConnectionGene(input, output, innovationNumber, weight);
+		return new ConnectionGene(input, output, innovationNumber, weight, active);
 	}
 
 	@Override
@@ -1,16 +1,25 @@
 package network;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
 import data.ActivationFunction;
 import data.BreedMethod;
-import data.Constants;
+import data.EvaluationBackend;
+import data.EvaluationMethod;
 import data.KillMethod;
 import data.MutateMethod;
 import data.NEATHeuristic;
+import network.GenerationMetrics.Phase;
 import network.NodeGene.Layer;
 
 public class Core {
@@ -19,24 +28,92 @@ public class Core {
 	protected HashMap<Integer, ConnectionGene> connections = new HashMap<>();
 	protected ArrayList<Genome> genomes = new ArrayList<>();
 	protected ArrayList<Species> species = new ArrayList<>();
+	protected ArrayList<NodeGene> inputNodes = new ArrayList<>();
+	protected ArrayList<NodeGene> outputNodes = new ArrayList<>();
+	protected Speciation speciation = new Speciation(this);
+	protected InnovationRegistry innovations = new InnovationRegistry(this);
+	protected RandomService random = new RandomService(ThreadLocalRandom.current().nextLong());
 	
 	protected ActivationFunction activationFunctionHidden;
 	protected ActivationFunction activationFunctionOutput;
 	
 	protected NEATHeuristic heuristic;
+	protected EvaluationMethod evaluationMethod = EvaluationMethod.SERIAL;
+	protected final EvaluationBackend evaluationBackend;
+	protected final BatchKernel kernel;
 	
-	private int populationSize;
+	protected KillMethod killMethod;
+	protected BreedMethod breedMethod;
+	protected MutateMethod mutateMethod;
 	
-	private int currentGeneration;
+	protected int populationSize;
+	/** The number of evaluations after which a phenotype is compiled, negative to never compile */
+	protected int compileThreshold = -1;
+	protected int maxCompiledConnections = NetworkCompiler.DEFAULT_MAX_CONNECTIONS;
 	
+	protected int currentGeneration;
+	
+	private Path checkpointFile;
+	private int checkpointInterval;
+	private Future<?> pendingCheckpoint;
+	private FitnessCache fitnessCache;
+	private GenerationArchive archive;
+	private int archiveLimit;
+	private final ArrayList<MetricsListener> metricsListeners = new ArrayList<>();
+	private final ArrayList<GenerationListener> generationListeners = new ArrayList<>();
+	private volatile boolean stopRequested;
+	private GenerationMetrics lastMetrics;
+	
+	public Core() {
+		this(EvaluationBackend.SCALAR);
+	}
+	
+	/**
+	 * @param evaluationBackend The backend used by each {@link Phenotype} to evaluate batches of samples
+	 */
+	public Core(EvaluationBackend evaluationBackend) {
+		this.evaluationBackend = evaluationBackend;
+		this.kernel = evaluationBackend.createKernel();
+	}
+	
+	/**
+	 * Sets up a new population and runs it until the maximum generation is reached or the heuristic stops the run
+	 * 
+	 * @see #setup
+	 * @see #run
+	 */
 	public void initialize(int numInputs, int numOutputs, 
 						   ActivationFunction afh, ActivationFunction afo,
 						   KillMethod killMethod, BreedMethod breedMethod, MutateMethod mutateMethod,
 						   NEATHeuristic heuristic, int populationSize,
 						   int maxGeneration) {
-		Constants.initialize();
+		setup(numInputs, numOutputs, afh, afo, killMethod, breedMethod, mutateMethod, heuristic, populationSize);
+		Genome best = run(maxGeneration);
+		System.out.println("Finished with " + best + " in " + currentGeneration + " generations");
+	}
+	
+	/**
+	 * Configures this core and creates its initial population without running any generation. Generations are then run
+	 * with {@link #step} or {@link #run}.
+	 * 
+	 * @param numInputs The number of input nodes
+	 * @param numOutputs The number of output nodes
+	 * @param afh The activation function of the hidden nodes
+	 * @param afo The activation function of the output nodes
+	 * @param populationSize The number of genomes in every generation
+	 */
+	public void setup(int numInputs, int numOutputs, 
+					  ActivationFunction afh, ActivationFunction afo,
+					  KillMethod killMethod, BreedMethod breedMethod, MutateMethod mutateMethod,
+					  NEATHeuristic heuristic, int populationSize) {
+		if (!genomes.isEmpty())
+			throw new IllegalStateException("Core is already set up");
+		this.heuristic = heuristic;
 		this.activationFunctionHidden = afh;
 		this.activationFunctionOutput = afo;
+		this.killMethod = killMethod;
+		this.breedMethod = breedMethod;
+		this.mutateMethod = mutateMethod;
 		this.populationSize = populationSize;
 		
 		ArrayList<ConnectionGene> baseConnections = new ArrayList<>();
@@ -44,68 +121,77 @@ public class Core {
 		for (int i = 0; i < numInputs; i++) {
 			NodeGene n = new NodeGene(Layer.INPUT);
 			nodes.put(n.getInnovationNumber(), n);
+			inputNodes.add(n);
 		}
 		for (int i = 0; i < numOutputs; i++) {
 			NodeGene n = new NodeGene(Layer.OUTPUT);
 			nodes.put(n.getInnovationNumber(), n);
+			outputNodes.add(n);
 		}
 		
 		nodes.values().stream().filter(n -> n.getLayer() == Layer.INPUT).forEach(n -> {
 			nodes.values().stream().filter(n2 -> n2.getLayer() == Layer.OUTPUT).forEach(n2 -> {
-				ConnectionGene cg = new ConnectionGene(n, n2);
-				connections.put(cg.getInnovationNumber(), cg);
-				baseConnections.add(cg);
+				baseConnections.add(innovations.getConnection(n, n2));
 			});
 		});
 		
 		for (int i = 0; i < populationSize; i++) {
+			SplittableRandom genomeRandom = random.split();
 			Genome g = new Genome(this);
-			g.addConnections(baseConnections);
+			for (ConnectionGene cg : baseConnections) {
+				ConnectionGene copy = cg.copy();
+				copy.mutateWeightRandom(genomeRandom);
+				g.addConnection(copy);
+			}
 			genomes.add(g);
 			g.addNodes(nodes.values().stream().collect(Collectors.toList()));
 		}
 		
 		currentGeneration = 0;
-		
+	}
+	
+	/**
+	 * Continues a run from a checkpoint written by an earlier run, restoring its population, species and innovations.
+	 * The run continues exactly as it would have without interruption, as long as the same heuristic is used.
+	 * 
+	 * @param file The checkpoint to be resumed
+	 * @param heuristic The heuristic used by the checkpointed run
+	 * @param maxGeneration The generation at which the run stops
+	 * @throws IOException If the checkpoint could not be read
+	 */
+	public void resume(Path file, NEATHeuristic heuristic, int maxGeneration) throws IOException {
+		restore(file, heuristic);
+		Genome best = run(maxGeneration);
+		System.out.println("Finished with " + best + " in " + currentGeneration + " generations");
+	}
+	
+	/**
+	 * Restores the population, species and innovations of a checkpoint without running any generation. Generations
+	 * are then run with {@link #step} or {@link #run}.
+	 * 
+	 * @param file The checkpoint to be restored
+	 * @param heuristic The heuristic used by the checkpointed run
+	 * @throws IOException If the checkpoint could not be read
+	 */
+	public void restore(Path file, NEATHeuristic heuristic) throws IOException {
+		if (!genomes.isEmpty())
+			throw new IllegalStateException("Only a new core can resume a checkpoint");
+		Checkpoint.read(this, file);
+		this.heuristic = heuristic;
+	}
+	
+	/**
+	 * Runs generations until the maximum generation is reached, the heuristic stops the run or {@link #stop} is
+	 * called. At least one generation is run.
+	 * 
+	 * @param maxGeneration The generation at which the run stops
+	 * @return The fittest genome of the last generation
+	 */
+	public Genome run(int maxGeneration) {
+		stopRequested = false;
 		do {
-			System.out.println("Calculating Fitness");
-			for (Genome g : genomes) {
-				float fitness = heuristic.computeFitness(g);
-				g.setFitness(fitness);
-			}
-			System.out.println("Fitness Calculated");
-
-			System.out.println("Calculating Species");
-			new Speciation(this);
-			System.out.println("Species Calculated");
-			
-			System.out.println("Kill");
-			killMethod.kill(this);
-			System.out.println("Finished Killing");
-			Species s = null;
-			for (Iterator<Species> iterator = species.iterator(); iterator.hasNext();) {
-				s = iterator.next();
-				if (s.getGenomes().isEmpty()) {
-					iterator.remove();
-				}
-			}
-			System.out.println("Breed");
-			breedMethod.breed(this);
-			System.out.println("Mutate");
-			mutateMethod.mutate(this);
-			System.out.println("Finished Mutating");
-			currentGeneration++;
-			//view best of generation
-			float maxFitness = Float.MIN_VALUE;
-			Genome best = null;
-			for (Genome g : genomes) {
-				if (g.getFitness() > maxFitness) {
-					maxFitness = g.getFitness();
-					best = g;
-				}
-			}
-			heuristic.computeFitness(best);
-		} while (currentGeneration < maxGeneration && !heuristic.checkStoppingCriteria(this));
+			step();
+		} while (currentGeneration < maxGeneration && !stopRequested && !heuristic.checkStoppingCriteria(this));
 		float maxFitness = Float.MIN_VALUE;
 		Genome best = null;
 		for (Genome g : genomes) {
@@ -114,8 +200,256 @@ public class Core {
 				best = g;
 			}
 		}
-		System.out.println("Finished with " + best + " in " + currentGeneration + " generations");
-		heuristic.computeFitness(best);
+		awaitCheckpoint();
+		return best;
+	}
+	
+	/**
+	 * Makes {@link #run} return after the current generation. May be called from a {@link GenerationListener}.
+	 */
+	public void stop() {
+		stopRequested = true;
+	}
+	
+	/**
+	 * Runs a single generation: the population is evaluated, speciated and culled, after which it is filled up with
+	 * new children and mutated. The registered {@link GenerationListener}s are called between these phases.
+	 */
+	public void step() {
+		if (heuristic == null)
+			throw new IllegalStateException("Core has not been set up");
+		for (GenerationListener listener : generationListeners) {
+			listener.generationStarted(this);
+		}
+		innovations.nextGeneration();
+		random.startGeneration(currentGeneration);
+		GenerationMetrics metrics = new GenerationMetrics(currentGeneration);
+		if (!metricsListeners.isEmpty()) {
+			metrics.countEvaluations(genomes, heuristic);
+		}
+		long time = System.nanoTime();
+		evaluationMethod.evaluate(this);
+		time = lap(metrics, Phase.EVALUATION, time);
+		if (!metricsListeners.isEmpty()) {
+			metrics.measurePopulation(genomes);
+		}
+		if (archive != null) {
+			archiveGeneration();
+		}
+		for (GenerationListener listener : generationListeners) {
+			listener.evaluated(this);
+		}
+
+		time = System.nanoTime();
+		speciation.speciate();
+		time = lap(metrics, Phase.SPECIATION, time);
+		metrics.setSpeciesCount(species.size());
+		for (GenerationListener listener : generationListeners) {
+			listener.speciated(this);
+		}
+		
+		time = System.nanoTime();
+		killMethod.kill(this);
+		Species s = null;
+		for (Iterator<Species> iterator = species.iterator(); iterator.hasNext();) {
+			s = iterator.next();
+			if (s.getGenomes().isEmpty()) {
+				iterator.remove();
+			}
+		}
+		time = lap(metrics, Phase.KILL, time);
+		breedMethod.breed(this);
+		time = lap(metrics, Phase.BREED, time);
+		mutateMethod.mutate(this);
+		lap(metrics, Phase.MUTATE, time);
+		metrics.measureInnovations(innovations);
+		lastMetrics = metrics;
+		for (MetricsListener listener : metricsListeners) {
+			listener.generationCompleted(metrics);
+		}
+		currentGeneration++;
+		if (checkpointFile != null && currentGeneration % checkpointInterval == 0) {
+			writeCheckpoint();
+		}
+		for (GenerationListener listener : generationListeners) {
+			listener.generationEnded(this);
+		}
+	}
+	
+	/**
+	 * Records the time spent in a phase
+	 * 
+	 * @return The end of the phase, which is the start of the next
+	 */
+	private static long lap(GenerationMetrics metrics, Phase phase, long start) {
+		long end = System.nanoTime();
+		metrics.setNanos(phase, end - start);
+		return end;
+	}
+	
+	/**
+	 * Registers a listener that is called at the start and end of every generation and after its evaluation and
+	 * speciation
+	 * 
+	 * @param listener The listener to be added
+	 */
+	public void addGenerationListener(GenerationListener listener) {
+		generationListeners.add(listener);
+	}
+	
+	public void removeGenerationListener(GenerationListener listener) {
+		generationListeners.remove(listener);
+	}
+	
+	/**
+	 * Registers a listener that receives the timings and statistics of every generation. Population statistics are
+	 * only computed while there is at least one listener.
+	 * 
+	 * @param listener The listener to be added, for example a {@link MetricsExporter}
+	 */
+	public void addMetricsListener(MetricsListener listener) {
+		metricsListeners.add(listener);
+	}
+	
+	public void removeMetricsListener(MetricsListener listener) {
+		metricsListeners.remove(listener);
+	}
+	
+	/**
+	 * @return The metrics of the last completed generation, or null if no generation has completed yet
+	 */
+	public GenerationMetrics getLastMetrics() {
+		return lastMetrics;
+	}
+	
+	/**
+	 * Lets phenotypes that are evaluated often, such as those of species leaders and elites, generate code with their
+	 * weights as constants instead of being interpreted. Only applies to phenotypes compiled after this call.
+	 * 
+	 * @param threshold The number of evaluations after which a phenotype generates code, negative to never do so
+	 * @param maxConnections The maximum number of connections of a phenotype to generate code for, larger phenotypes
+	 *        are always interpreted
+	 */
+	public void setCodeGeneration(int threshold, int maxConnections) {
+		this.compileThreshold = threshold;
+		this.maxCompiledConnections = maxConnections;
+	}
+	
+	public int getCompileThreshold() {
+		return compileThreshold;
+	}
+	
+	/**
+	 * Looks up the fitness of identical genomes in a cache before evaluating them. Only used if the heuristic is
+	 * deterministic.
+	 * 
+	 * @param fitnessCache The cache to be used, or null to evaluate every changed genome
+	 */
+	public void setFitnessCache(FitnessCache fitnessCache) {
+		this.fitnessCache = fitnessCache;
+	}
+	
+	public FitnessCache getFitnessCache() {
+		return fitnessCache;
+	}
+	
+	/**
+	 * Appends the evaluated genomes of every generation to an archive, so any of them can be loaded again after the
+	 * run. The archive is not closed by the core.
+	 * 
+	 * @param archive The archive to which the generations are appended, or null to stop archiving
+	 * @param limit The maximum number of genomes archived per generation, the fittest are kept
+	 */
+	public void setArchive(GenerationArchive archive, int limit) {
+		if (limit <= 0)
+			throw new IllegalArgumentException("Archive limit must be positive: " + limit);
+		this.archive = archive;
+		this.archiveLimit = limit;
+	}
+	
+	public GenerationArchive getArchive() {
+		return archive;
+	}
+	
+	/**
+	 * Archives the current generation. Generations the archive already holds, such as those run again after resuming
+	 * from a checkpoint, are skipped. A failed write is reported but does not stop the run.
+	 */
+	private void archiveGeneration() {
+		try {
+			if (currentGeneration > archive.getLastGeneration()) {
+				archive.append(currentGeneration, genomes, archiveLimit);
+			}
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Archiving generation " + currentGeneration + " failed: " + e);
+		}
+	}
+	
+	/**
+	 * Writes a checkpoint every number of generations, so the run can be continued with {@link #resume} after a crash.
+	 * Each checkpoint replaces the previous one. The state is captured between generations and written to disk in the
+	 * background while evolution continues.
+	 * 
+	 * @param file The file to which the checkpoints are written
+	 * @param interval The number of generations between checkpoints
+	 */
+	public void setCheckpointing(Path file, int interval) {
+		if (interval <= 0)
+			throw new IllegalArgumentException("Checkpoint interval must be positive: " + interval);
+		this.checkpointFile = file;
+		this.checkpointInterval = interval;
+	}
+	
+	/**
+	 * Stops writing checkpoints
+	 */
+	public void disableCheckpointing() {
+		this.checkpointFile = null;
+	}
+	
+	/**
+	 * Writes a checkpoint of the current state immediately
+	 * 
+	 * @param file The file to which the checkpoint is written
+	 * @throws IOException If the checkpoint could not be written
+	 */
+	public void checkpoint(Path file) throws IOException {
+		Checkpoint.write(Checkpoint.capture(this), file);
+	}
+	
+	/**
+	 * Captures the current state and hands it to the background writer. A failed write is reported but does not stop
+	 * the run.
+	 */
+	private void writeCheckpoint() {
+		ByteBuffer state = Checkpoint.capture(this);
+		Path file = checkpointFile;
+		awaitCheckpoint();
+		pendingCheckpoint = Checkpoint.WRITER.submit(() -> {
+			try {
+				Checkpoint.write(state, file);
+			} catch (IOException e) {
+				System.err.println("Writing checkpoint " + file + " failed: " + e);
+			}
+		});
+	}
+	
+	/**
+	 * Waits until the last checkpoint has been written. Only needed when generations are run with {@link #step}, as
+	 * {@link #run} waits before it returns.
+	 */
+	public void awaitCheckpoint() {
+		Future<?> pending = pendingCheckpoint;
+		if (pending == null)
+			return;
+		try {
+			pending.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			System.err.println("Writing checkpoint failed: " + e.getCause());
+		}
+		pendingCheckpoint = null;
 	}
 	
 	public ArrayList<Genome> getGenomes() {
@@ -129,5 +463,54 @@ public class Core {
 	public int getPopulationSize() {
 		return populationSize;
 	}
+	
+	public int getCurrentGeneration() {
+		return currentGeneration;
+	}
+	
+	public InnovationRegistry getInnovations() {
+		return innovations;
+	}
+	
+	/**
+	 * @return The source of all randomness of this run
+	 */
+	public RandomService getRandom() {
+		return random;
+	}
+	
+	/**
+	 * Sets the seed of the run, a run started with the same seed and settings produces the same genomes. Should be
+	 * called before {@link #initialize}.
+	 * 
+	 * @param seed The seed of the run
+	 */
+	public void setSeed(long seed) {
+		random = new RandomService(seed);
+	}
+	
+	public long getSeed() {
+		return random.getSeed();
+	}
+	
+	public Speciation getSpeciation() {
+		return speciation;
+	}
+	
+	public NEATHeuristic getHeuristic() {
+		return heuristic;
+	}
+	
+	public EvaluationBackend getEvaluationBackend() {
+		return evaluationBackend;
+	}
+	
+	public EvaluationMethod getEvaluationMethod() {
+		return evaluationMethod;
+	}
+	
+	public void setEvaluationMethod(EvaluationMethod evaluationMethod) {
+		this.evaluationMethod = evaluationMethod;
+	}
 	 
 }
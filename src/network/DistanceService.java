@@ -0,0 +1,214 @@
+package network;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Computes the distances between genomes and species representatives used for speciation, comparing many genomes
+ * against the representatives in parallel. The distances of a generation are written to a plain matrix without any
+ * locking. At the end of the generation only the distances to representatives that represent a species again are
+ * kept, keyed by the id and version of the genome, so a cached distance is no longer used once either genome mutates.
+ * Genomes that were created or mutated since then skip the lookup, as they can not have a cached distance.
+ *
+ * @author Siemen Geurts, Thomas van den Broek
+ *
+ */
+public class DistanceService {
+
+	/** The cached distances to a representative, stored by the key of the genome */
+	private volatile Map<Long, float[]> cache = Map.of();
+	/** The sorted keys of the genomes in the cache, indexing the distances */
+	private volatile long[] cachedKeys = new long[0];
+	private volatile Set<Long> knownGenomes = Set.of();
+
+	/** The genomes and distances of the last parallel comparison, from which the cache of the next generation is taken */
+	private long[] comparedKeys;
+	private List<Genome> comparedRepresentatives;
+	private float[] comparedDistances;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder computeTime = new LongAdder();
+	private final LongAdder totalTime = new LongAdder();
+
+	/**
+	 * Finds for every genome the closest representative within a threshold, comparing the genomes in parallel
+	 *
+	 * @param genomes The genomes to be compared
+	 * @param representatives The genomes to compare with
+	 * @param threshold The maximum distance to a representative
+	 * @return For each genome the index of its closest representative, or -1 if none is within the threshold
+	 */
+	public int[] findClosest(List<Genome> genomes, List<Genome> representatives, float threshold) {
+		float[][] cached = cached(representatives);
+		int count = representatives.size();
+		long[] keys = new long[genomes.size()];
+		float[] distances = new float[genomes.size() * count];
+		int[] closest = new int[genomes.size()];
+		IntStream.range(0, genomes.size()).parallel().forEach(i -> {
+			keys[i] = key(genomes.get(i));
+			closest[i] = findClosest(genomes.get(i), keys[i], representatives, cached, distances, i * count, threshold);
+		});
+		comparedKeys = keys;
+		comparedRepresentatives = representatives;
+		comparedDistances = distances;
+		return closest;
+	}
+
+	/**
+	 * Finds the closest representative within a threshold of a single genome
+	 *
+	 * @param genome The genome to be compared
+	 * @param representatives The genomes to compare with
+	 * @param threshold The maximum distance to a representative
+	 * @return The index of the closest representative, or -1 if none is within the threshold
+	 */
+	public int findClosest(Genome genome, List<Genome> representatives, float threshold) {
+		return findClosest(genome, key(genome), representatives, cached(representatives), null, 0, threshold);
+	}
+
+	/**
+	 * @param distances If not null, the distance to each representative is stored here starting at the offset
+	 */
+	private int findClosest(Genome genome, long key, List<Genome> representatives, float[][] cached, float[] distances,
+			int offset, float threshold) {
+		long start = System.nanoTime();
+		int index = knownGenomes.contains(key) ? Arrays.binarySearch(cachedKeys, key) : -1;
+		int found = 0;
+		int closest = -1;
+		float closestDist = threshold;
+		for (int r = 0; r < representatives.size(); r++) {
+			float dist;
+			if (index >= 0 && cached[r] != null) {
+				dist = cached[r][index];
+				found++;
+			} else {
+				long computeStart = System.nanoTime();
+				dist = genome.computeDistance(representatives.get(r));
+				computeTime.add(System.nanoTime() - computeStart);
+			}
+			if (distances != null) {
+				distances[offset + r] = dist;
+			}
+			if (dist < closestDist) {
+				closest = r;
+				closestDist = dist;
+			}
+		}
+		hits.add(found);
+		misses.add(representatives.size() - found);
+		totalTime.add(System.nanoTime() - start);
+		return closest;
+	}
+
+	/**
+	 * Ends a generation of the cache. Only the distances between the genomes and the given representatives are kept,
+	 * and only the given genomes in their current version can have a cached distance in the next generation. Must not
+	 * be called while distances are being computed.
+	 *
+	 * @param genomes The genomes of the generation that was speciated
+	 * @param nextRepresentatives The representatives the genomes of the next generation are compared with
+	 */
+	public void finishGeneration(List<Genome> genomes, List<Genome> nextRepresentatives) {
+		Set<Long> known = new HashSet<>(genomes.size() * 2);
+		for (Genome g : genomes) {
+			known.add(key(g));
+		}
+		Map<Long, float[]> kept = new HashMap<>();
+		long[] sorted = new long[0];
+		if (comparedDistances != null) {
+			sorted = comparedKeys.clone();
+			Arrays.sort(sorted);
+			int count = comparedRepresentatives.size();
+			for (Genome representative : nextRepresentatives) {
+				int r = comparedRepresentatives.indexOf(representative);
+				if (r < 0 || key(comparedRepresentatives.get(r)) != key(representative)) {
+					continue;
+				}
+				float[] distances = new float[sorted.length];
+				for (int i = 0; i < comparedKeys.length; i++) {
+					distances[Arrays.binarySearch(sorted, comparedKeys[i])] = comparedDistances[i * count + r];
+				}
+				kept.put(key(representative), distances);
+			}
+		}
+		knownGenomes = known;
+		cachedKeys = sorted;
+		cache = kept;
+		comparedKeys = null;
+		comparedRepresentatives = null;
+		comparedDistances = null;
+	}
+
+	/**
+	 * @return For each representative its cached distances, or null if it has none
+	 */
+	private float[][] cached(List<Genome> representatives) {
+		Map<Long, float[]> cache = this.cache;
+		float[][] cached = new float[representatives.size()][];
+		for (int r = 0; r < cached.length; r++) {
+			cached[r] = cache.get(key(representatives.get(r)));
+		}
+		return cached;
+	}
+
+	/**
+	 * @return The id and version of a genome packed into a single value
+	 */
+	private static long key(Genome g) {
+		return (long) g.getId() << 32 | (g.getVersion() & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * @return The number of distances kept in the cache
+	 */
+	public int getCacheSize() {
+		return cache.size() * cachedKeys.length;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return The fraction of distances that did not have to be computed
+	 */
+	public double getHitRate() {
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	/**
+	 * @return The time in nanoseconds spent computing distances that were not cached, summed over all threads
+	 */
+	public long getComputeTime() {
+		return computeTime.sum();
+	}
+
+	/**
+	 * @return The time in nanoseconds spent finding the closest representatives, including cache lookups, summed over
+	 *         all threads
+	 */
+	public long getTotalTime() {
+		return totalTime.sum();
+	}
+
+	public void resetStatistics() {
+		hits.reset();
+		misses.reset();
+		computeTime.reset();
+		totalTime.reset();
+	}
+
+}
@@ -0,0 +1,153 @@
+package network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import data.NEATHeuristic;
+
+/**
+ * Remembers the fitness of genomes by their {@link Fingerprint}, so a genome identical to one evaluated earlier, such
+ * as a child that inherited all genes of a parent, is not evaluated again. The fitness values are kept in a bounded
+ * {@link LRUCache} and are only valid for a deterministic heuristic.
+ *
+ * @author Siemen Geurts, Thomas van den Broek
+ *
+ */
+public class FitnessCache {
+
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	private final LRUCache<Fingerprint, Float> cache;
+	private final float resolution;
+
+	public FitnessCache() {
+		this(DEFAULT_CAPACITY, 0);
+	}
+
+	/**
+	 * @param capacity The maximum number of fitness values kept in the cache
+	 * @param resolution The step to which weights are rounded before comparing genomes. With 0 only genomes with
+	 *        exactly the same weights match, a larger step lets genomes with nearly the same weights share a fitness.
+	 */
+	public FitnessCache(int capacity, float resolution) {
+		if (resolution < 0)
+			throw new IllegalArgumentException("Resolution must not be negative: " + resolution);
+		this.cache = new LRUCache<>(capacity);
+		this.resolution = resolution;
+	}
+
+	/**
+	 * Gives a genome its fitness, computing it only if no genome with the same fingerprint is cached
+	 *
+	 * @param genome The genome to be evaluated
+	 * @param heuristic The heuristic computing the fitness
+	 */
+	public void evaluate(Genome genome, NEATHeuristic heuristic) {
+		Fingerprint key = Fingerprint.of(genome, resolution);
+		Float fitness = cache.get(key);
+		if (fitness == null) {
+			genome.evaluate(heuristic);
+			cache.put(key, genome.getFitness());
+		} else {
+			genome.setEvaluatedFitness(fitness);
+		}
+	}
+
+	public LRUCache<?, ?> getCache() {
+		return cache;
+	}
+
+	public float getResolution() {
+		return resolution;
+	}
+
+	/**
+	 * @return The number of evaluations answered by this cache
+	 */
+	public long getHits() {
+		return cache.getHits();
+	}
+
+	/**
+	 * @return The number of evaluations that had to be computed
+	 */
+	public long getMisses() {
+		return cache.getMisses();
+	}
+
+	public double getHitRate() {
+		return cache.getHitRate();
+	}
+
+	public void resetStatistics() {
+		cache.resetStatistics();
+	}
+
+	public void clear() {
+		cache.clear();
+	}
+
+	/**
+	 * A canonical description of the network of a genome: the innovation numbers of its connections in ascending
+	 * order, whether each is enabled and its rounded weight. Disabled connections are left out of the
+	 * {@link Phenotype}, so their weights are not part of the fingerprint. Two genomes with equal fingerprints compute
+	 * the same outputs, up to the rounding of the weights.
+	 */
+	public static final class Fingerprint {
+
+		private final int[] innovations;
+		private final int[] weights;
+		private final long[] enabled;
+		private final int hash;
+
+		private Fingerprint(int[] innovations, int[] weights, long[] enabled) {
+			this.innovations = innovations;
+			this.weights = weights;
+			this.enabled = enabled;
+			int h = Arrays.hashCode(innovations);
+			h = 31 * h + Arrays.hashCode(weights);
+			this.hash = 31 * h + Arrays.hashCode(enabled);
+		}
+
+		/**
+		 * @param genome The genome to be described
+		 * @param resolution The step to which the weights are rounded, or 0 to compare them exactly
+		 * @return The fingerprint of the genome
+		 */
+		public static Fingerprint of(Genome genome, float resolution) {
+			ArrayList<ConnectionGene> connections = genome.getConnections();
+			int size = connections.size();
+			int[] innovations = new int[size];
+			int[] weights = new int[size];
+			long[] enabled = new long[(size + 63) >>> 6];
+			for (int i = 0; i < size; i++) {
+				ConnectionGene cg = connections.get(i);
+				innovations[i] = cg.getInnovationNumber();
+				if (cg.isActive()) {
+					float weight = cg.getWeight();
+					//Adding 0 turns -0 into 0, so both compare equal like they evaluate equal
+					weights[i] = resolution > 0 ? Math.round(weight / resolution) : Float.floatToIntBits(weight + 0f);
+					enabled[i >>> 6] |= 1L << i;
+				}
+			}
+			return new Fingerprint(innovations, weights, enabled);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o instanceof Fingerprint) {
+				Fingerprint f = (Fingerprint) o;
+				return f.hash == hash && Arrays.equals(f.innovations, innovations) && Arrays.equals(f.weights, weights)
+						&& Arrays.equals(f.enabled, enabled);
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+	}
+
+}
@@ -0,0 +1,481 @@
+package network;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Append-only archive of the genomes of every generation, stored in two memory-mapped files so that archives of many
+ * gigabytes can be written and read without holding them on the heap.
+ * <p>
+ * The data file holds one block per generation: a table with the fitness, offset and length of each genome sorted by
+ * descending fitness, followed by the genomes in the compact encoding of {@link CompactGenome}. The index file holds a
+ * fixed size entry per generation with the generation number, the number of genomes, the best and mean fitness and the
+ * location of its block. Generations are appended in increasing order, so a generation is found by a binary search of
+ * the index, after which any genome of it can be loaded directly by its rank.
+ * <p>
+ * Both files are mapped in large windows that are reused for many generations, so the files grow ahead of the data
+ * and their unused end is cut off when the archive is opened again. Appended generations are only forced to disk by
+ * {@link #flush()} and {@link #close()}, a generation whose block did not reach the disk before its index entry is
+ * discarded when the archive is opened again.
+ *
+ * @author Siemen Geurts, Thomas van den Broek
+ *
+ */
+public class GenerationArchive implements Closeable {
+
+	public static final int MAGIC = 0x4E454147; // "NEAG"
+	public static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 8;
+	/** generation, count, best fitness, mean fitness, offset, length */
+	private static final int INDEX_ENTRY_SIZE = 4 + 4 + 4 + 4 + 8 + 8;
+	/** fitness, length, offset */
+	private static final int TABLE_ENTRY_SIZE = 4 + 4 + 8;
+	/** The size of the first window the data file is written through, every next window is twice as large */
+	private static final long INITIAL_WINDOW_SIZE = 1 << 20;
+	private static final long MAX_WINDOW_SIZE = 1 << 30;
+	/** Older generations are read through windows of this size */
+	private static final long READ_WINDOW_SIZE = 1 << 26;
+	/** The number of generations the index is mapped for at first, it is mapped again twice as large when full */
+	private static final int INITIAL_INDEX_CAPACITY = 1024;
+
+	private final FileChannel data;
+	private final FileChannel index;
+	private long dataEnd;
+	private int generationCount;
+	private MappedByteBuffer indexMap;
+	/** The window of the data file new generations are written to, starting at writeStart */
+	private MappedByteBuffer writeWindow;
+	private long writeStart;
+	/** The window of the data file generations before the write window are read from, starting at readStart */
+	private MappedByteBuffer readWindow;
+	private long readStart;
+
+	/**
+	 * Opens an archive, creating it if it does not exist yet. A generation that was only partly written when an earlier
+	 * run stopped is discarded, as is every index entry after the first one that does not describe a complete block.
+	 *
+	 * @param dataFile The file holding the genomes
+	 * @param indexFile The file holding the index of the generations
+	 * @throws IOException If the files could not be opened or are not an archive
+	 */
+	public GenerationArchive(Path dataFile, Path indexFile) throws IOException {
+		data = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		index = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			checkHeader(data, dataFile);
+			checkHeader(index, indexFile);
+			generationCount = (int) ((index.size() - HEADER_SIZE) / INDEX_ENTRY_SIZE);
+			dataEnd = HEADER_SIZE;
+			validateIndex();
+			//Drop whatever was written after the last complete generation
+			index.truncate(HEADER_SIZE + (long) generationCount * INDEX_ENTRY_SIZE);
+			data.truncate(dataEnd);
+			mapIndex(Math.max(INITIAL_INDEX_CAPACITY, generationCount * 2));
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens an archive stored as two files with the given base name and the extensions .data and .index
+	 *
+	 * @param base The path of the archive without extension
+	 * @return The opened archive
+	 * @throws IOException If the files could not be opened or are not an archive
+	 */
+	public static GenerationArchive open(Path base) throws IOException {
+		String name = base.getFileName().toString();
+		return new GenerationArchive(base.resolveSibling(name + ".data"), base.resolveSibling(name + ".index"));
+	}
+
+	/**
+	 * Keeps the index entries up to the first one that is not valid, which is the case for an entry that was not
+	 * completely written when an earlier run stopped. An entry is valid if its generation is newer than the one before,
+	 * it holds at least one genome and its block lies within the data file, after the block of the entry before. As the
+	 * index entry may have reached the disk before its block, the first and last entry of the table of the block must
+	 * point to the records that follow it as well.
+	 */
+	private void validateIndex() throws IOException {
+		long dataSize = data.size();
+		ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+		ByteBuffer first = ByteBuffer.allocate(TABLE_ENTRY_SIZE);
+		ByteBuffer last = ByteBuffer.allocate(TABLE_ENTRY_SIZE);
+		int previous = Integer.MIN_VALUE;
+		int valid = 0;
+		while (valid < generationCount) {
+			readFully(index, entry, HEADER_SIZE + (long) valid * INDEX_ENTRY_SIZE);
+			int generation = entry.getInt(0);
+			int count = entry.getInt(4);
+			long offset = entry.getLong(16);
+			long length = entry.getLong(24);
+			long tableLength = (long) count * TABLE_ENTRY_SIZE;
+			if (generation <= previous || count <= 0 || length < tableLength || offset < dataEnd
+					|| offset > dataSize - length)
+				break;
+			readFully(data, first, offset);
+			readFully(data, last, offset + tableLength - TABLE_ENTRY_SIZE);
+			if (first.getLong(8) != offset + tableLength || last.getLong(8) + last.getInt(4) != offset + length)
+				break;
+			previous = generation;
+			dataEnd = offset + length;
+			valid++;
+		}
+		generationCount = valid;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		buffer.clear();
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new EOFException();
+		}
+	}
+
+	private static void checkHeader(FileChannel channel, Path file) throws IOException {
+		if (channel.size() == 0) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).flip();
+			channel.write(header, 0);
+			return;
+		}
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		channel.read(header, 0);
+		header.flip();
+		if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC)
+			throw new IOException(file + " is not a generation archive");
+		int version = header.getInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported archive version " + version + " in " + file);
+	}
+
+	/**
+	 * Appends the genomes of a generation, sorted by descending fitness
+	 *
+	 * @param generation The number of the generation, greater than that of all archived generations
+	 * @param genomes The genomes of the generation
+	 * @param limit The maximum number of genomes to be stored, the fittest are kept
+	 * @throws IOException If the archive could not be written
+	 */
+	public synchronized void append(int generation, List<Genome> genomes, int limit) throws IOException {
+		if (generation <= getLastGeneration())
+			throw new IllegalArgumentException("Generation " + generation + " is not newer than the last archived one");
+		if (limit <= 0 || genomes.isEmpty())
+			throw new IllegalArgumentException("A generation without genomes can not be archived");
+		ArrayList<Genome> sorted = new ArrayList<>(genomes);
+		Collections.sort(sorted, Collections.reverseOrder());
+		int count = Math.min(limit, sorted.size());
+		CompactGenome[] compact = new CompactGenome[count];
+		long length = (long) count * TABLE_ENTRY_SIZE;
+		float sum = 0;
+		for (int i = 0; i < count; i++) {
+			compact[i] = CompactGenome.of(sorted.get(i));
+			length += recordLength(compact[i]);
+			sum += compact[i].getFitness();
+		}
+
+		ByteBuffer block = appendWindow(length);
+		long recordOffset = dataEnd + (long) count * TABLE_ENTRY_SIZE;
+		for (CompactGenome cg : compact) {
+			int recordLength = recordLength(cg);
+			block.putFloat(cg.getFitness());
+			block.putInt(recordLength);
+			block.putLong(recordOffset);
+			recordOffset += recordLength;
+		}
+		for (CompactGenome cg : compact) {
+			writeRecord(block, cg);
+		}
+
+		if (HEADER_SIZE + (long) (generationCount + 1) * INDEX_ENTRY_SIZE > indexMap.capacity()) {
+			mapIndex(generationCount * 2);
+		}
+		ByteBuffer entry = indexMap.slice(HEADER_SIZE + generationCount * INDEX_ENTRY_SIZE, INDEX_ENTRY_SIZE);
+		entry.putInt(generation);
+		entry.putInt(count);
+		entry.putFloat(compact[0].getFitness());
+		entry.putFloat(sum / count);
+		entry.putLong(dataEnd);
+		entry.putLong(length);
+		dataEnd += length;
+		generationCount++;
+	}
+
+	/**
+	 * Returns the region of the data file a block of the given length is appended to. When the block does not fit in
+	 * the current write window, the window is forced to disk and replaced by a window twice as large starting at the end
+	 * of the data.
+	 */
+	private ByteBuffer appendWindow(long length) throws IOException {
+		if (length > MAX_WINDOW_SIZE)
+			throw new IOException("A generation of " + length + " bytes is too large to be archived");
+		if (writeWindow == null || dataEnd + length > writeStart + writeWindow.capacity()) {
+			long size = INITIAL_WINDOW_SIZE;
+			if (writeWindow != null) {
+				writeWindow.force();
+				size = Math.min(MAX_WINDOW_SIZE, 2L * writeWindow.capacity());
+			}
+			writeStart = dataEnd;
+			writeWindow = data.map(MapMode.READ_WRITE, writeStart, Math.max(size, length));
+		}
+		return writeWindow.slice((int) (dataEnd - writeStart), (int) length);
+	}
+
+	/**
+	 * Returns an archived region of the data file, from the write window if it holds the region and otherwise from a
+	 * read window, which is only mapped again if it does not hold the region either
+	 */
+	private ByteBuffer dataWindow(long offset, int length) throws IOException {
+		if (writeWindow != null && offset >= writeStart && offset + length <= writeStart + writeWindow.capacity())
+			return writeWindow.slice((int) (offset - writeStart), length);
+		if (readWindow == null || offset < readStart || offset + length > readStart + readWindow.capacity()) {
+			readStart = offset - offset % READ_WINDOW_SIZE;
+			long size = Math.min(Math.max(READ_WINDOW_SIZE, offset + length - readStart), dataEnd - readStart);
+			readWindow = data.map(MapMode.READ_ONLY, readStart, size);
+		}
+		return readWindow.slice((int) (offset - readStart), length);
+	}
+
+	private static int recordLength(CompactGenome cg) {
+		return 4 + 4 + cg.size() * (4 + 4 + 4 + 4 + 1);
+	}
+
+	private static void writeRecord(ByteBuffer buffer, CompactGenome cg) {
+		int size = cg.size();
+		buffer.putFloat(cg.getFitness());
+		buffer.putInt(size);
+		buffer.asIntBuffer().put(cg.getInnovations(), 0, size);
+		buffer.position(buffer.position() + size * 4);
+		buffer.asIntBuffer().put(cg.getInputs(), 0, size);
+		buffer.position(buffer.position() + size * 4);
+		buffer.asIntBuffer().put(cg.getOutputs(), 0, size);
+		buffer.position(buffer.position() + size * 4);
+		buffer.asFloatBuffer().put(cg.getWeights(), 0, size);
+		buffer.position(buffer.position() + size * 4);
+		boolean[] enabled = cg.getEnabled();
+		for (int i = 0; i < size; i++) {
+			buffer.put(enabled[i] ? (byte) 1 : (byte) 0);
+		}
+	}
+
+	/**
+	 * Loads a genome of an archived generation
+	 *
+	 * @param generation The number of the generation
+	 * @param rank The rank of the genome by fitness within its generation, 0 being the fittest
+	 * @param core The core whose nodes the genome uses, needed to evaluate the genome
+	 * @return The genome, or null if the generation was not archived or has fewer genomes
+	 * @throws IOException If the archive could not be read
+	 */
+	public synchronized CompactGenome read(int generation, int rank, Core core) throws IOException {
+		int i = find(generation);
+		if (i < 0)
+			return null;
+		ByteBuffer entry = readIndexEntry(i);
+		if (rank < 0 || rank >= entry.getInt(4))
+			return null;
+		ByteBuffer table = dataWindow(entry.getLong(16) + (long) rank * TABLE_ENTRY_SIZE, TABLE_ENTRY_SIZE);
+		table.getFloat();
+		int length = table.getInt();
+		long offset = table.getLong();
+		ByteBuffer record = dataWindow(offset, length);
+		float fitness = record.getFloat();
+		int size = record.getInt();
+		int[] innovations = new int[size];
+		int[] inputs = new int[size];
+		int[] outputs = new int[size];
+		float[] weights = new float[size];
+		boolean[] enabled = new boolean[size];
+		record.asIntBuffer().get(innovations);
+		record.position(record.position() + size * 4);
+		record.asIntBuffer().get(inputs);
+		record.position(record.position() + size * 4);
+		record.asIntBuffer().get(outputs);
+		record.position(record.position() + size * 4);
+		record.asFloatBuffer().get(weights);
+		record.position(record.position() + size * 4);
+		for (int g = 0; g < size; g++) {
+			enabled[g] = record.get() != 0;
+		}
+		CompactGenome genome = new CompactGenome(core, size, innovations, inputs, outputs, weights, enabled);
+		genome.setFitness(fitness);
+		return genome;
+	}
+
+	/**
+	 * Loads the fittest genome of an archived generation
+	 *
+	 * @param generation The number of the generation
+	 * @param core The core whose nodes the genome uses, needed to evaluate the genome
+	 * @return The genome, or null if the generation was not archived or is empty
+	 * @throws IOException If the archive could not be read
+	 */
+	public CompactGenome readBest(int generation, Core core) throws IOException {
+		return read(generation, 0, core);
+	}
+
+	/**
+	 * Reads the fitness of all archived genomes of a generation without loading the genomes
+	 *
+	 * @param generation The number of the generation
+	 * @return The fitness values in descending order, empty if the generation was not archived
+	 * @throws IOException If the archive could not be read
+	 */
+	public synchronized float[] getFitness(int generation) throws IOException {
+		int i = find(generation);
+		if (i < 0)
+			return new float[0];
+		ByteBuffer entry = readIndexEntry(i);
+		int count = entry.getInt(4);
+		float[] fitness = new float[count];
+		if (count == 0)
+			return fitness;
+		ByteBuffer table = dataWindow(entry.getLong(16), count * TABLE_ENTRY_SIZE);
+		for (int r = 0; r < count; r++) {
+			fitness[r] = table.getFloat(r * TABLE_ENTRY_SIZE);
+		}
+		return fitness;
+	}
+
+	/**
+	 * @param generation The number of the generation
+	 * @return The fitness of the fittest archived genome of the generation, or NaN if it was not archived
+	 * @throws IOException If the archive could not be read
+	 */
+	public synchronized float getBestFitness(int generation) throws IOException {
+		int i = find(generation);
+		return i < 0 ? Float.NaN : readIndexEntry(i).getFloat(8);
+	}
+
+	/**
+	 * @param generation The number of the generation
+	 * @return The mean fitness of the archived genomes of the generation, or NaN if it was not archived
+	 * @throws IOException If the archive could not be read
+	 */
+	public synchronized float getMeanFitness(int generation) throws IOException {
+		int i = find(generation);
+		return i < 0 ? Float.NaN : readIndexEntry(i).getFloat(12);
+	}
+
+	/**
+	 * @return The number of the archived generation whose fittest genome is the fittest of all, or -1 if the archive is
+	 *         empty
+	 * @throws IOException If the archive could not be read
+	 */
+	public synchronized int getBestGeneration() throws IOException {
+		ByteBuffer map = indexMap;
+		int best = -1;
+		float bestFitness = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < generationCount; i++) {
+			int position = HEADER_SIZE + i * INDEX_ENTRY_SIZE;
+			if (map.getInt(position + 4) > 0 && map.getFloat(position + 8) > bestFitness) {
+				bestFitness = map.getFloat(position + 8);
+				best = map.getInt(position);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return The number of the newest archived generation, or -1 if the archive is empty
+	 * @throws IOException If the archive could not be read
+	 */
+	public synchronized int getLastGeneration() throws IOException {
+		return generationCount == 0 ? -1 : getGeneration(generationCount - 1);
+	}
+
+	/**
+	 * @return The number of archived generations
+	 */
+	public synchronized int getGenerationCount() {
+		return generationCount;
+	}
+
+	/**
+	 * @return The total size of the archived genomes in bytes
+	 */
+	public synchronized long getDataSize() {
+		return dataEnd;
+	}
+
+	/**
+	 * Binary search of the index for a generation
+	 *
+	 * @return The position of the generation in the index, or -1 if it was not archived
+	 */
+	private int find(int generation) {
+		int low = 0, high = generationCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int g = getGeneration(mid);
+			if (g < generation) {
+				low = mid + 1;
+			} else if (g > generation) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	private int getGeneration(int i) {
+		return indexMap.getInt(HEADER_SIZE + i * INDEX_ENTRY_SIZE);
+	}
+
+	private ByteBuffer readIndexEntry(int i) {
+		return indexMap.slice(HEADER_SIZE + i * INDEX_ENTRY_SIZE, INDEX_ENTRY_SIZE);
+	}
+
+	/**
+	 * Maps the index with room for the given number of generations, growing the file if needed
+	 */
+	private void mapIndex(int capacity) throws IOException {
+		if (indexMap != null) {
+			indexMap.force();
+		}
+		indexMap = index.map(MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * INDEX_ENTRY_SIZE);
+	}
+
+	/**
+	 * Forces all appended generations to be written to disk. The genomes are forced before the index, so the index
+	 * never refers to genomes that are not on disk.
+	 *
+	 * @throws IOException If the archive could not be written
+	 */
+	public synchronized void flush() throws IOException {
+		if (writeWindow != null) {
+			writeWindow.force();
+		}
+		data.force(false);
+		if (indexMap != null) {
+			indexMap.force();
+		}
+		index.force(false);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			if (data.isOpen() && index.isOpen()) {
+				flush();
+			}
+		} finally {
+			data.close();
+			index.close();
+		}
+	}
+
+}
@@ -0,0 +1,45 @@
+package network;
+
+/**
+ * Is called by a {@link Core} at fixed points of every generation, for example to inspect the population, to profile
+ * or to stop the run early with {@link Core#stop}. All methods are called on the evolving thread and do nothing by
+ * default.
+ *
+ * @author Siemen Geurts, Thomas van den Broek
+ *
+ */
+public interface GenerationListener {
+
+	/**
+	 * Called before the population of a generation is evaluated
+	 *
+	 * @param core The evolving core
+	 */
+	default void generationStarted(Core core) {
+	}
+
+	/**
+	 * Called after every genome of the generation has been given its fitness
+	 *
+	 * @param core The evolving core
+	 */
+	default void evaluated(Core core) {
+	}
+
+	/**
+	 * Called after the evaluated genomes have been divided into species
+	 *
+	 * @param core The evolving core
+	 */
+	default void speciated(Core core) {
+	}
+
+	/**
+	 * Called after the next population has been bred and mutated, when the generation number has been increased
+	 *
+	 * @param core The evolving core
+	 */
+	default void generationEnded(Core core) {
+	}
+
+}
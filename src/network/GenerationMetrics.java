@@ -0,0 +1,179 @@
+package network;
+
+import java.util.List;
+
+import data.EvaluationMethod;
+import data.NEATHeuristic;
+
+/**
+ * The measurements of a single generation of a {@link Core}: the time spent in each phase and statistics of the
+ * evaluated population.
+ *
+ * @author Siemen Geurts, Thomas van den Broek
+ *
+ */
+public class GenerationMetrics {
+
+	/**
+	 * The phases of a generation, in the order in which they run
+	 */
+	public enum Phase {
+		EVALUATION, SPECIATION, KILL, BREED, MUTATE
+	}
+
+	private final int generation;
+	private final long[] nanos = new long[Phase.values().length];
+	private int populationSize;
+	private int evaluations;
+	private float minFitness;
+	private float meanFitness;
+	private float maxFitness;
+	private float meanGenomeSize;
+	private int speciesCount;
+	private int connectionsCreated;
+	private int nodesCreated;
+
+	GenerationMetrics(int generation) {
+		this.generation = generation;
+	}
+
+	void setNanos(Phase phase, long nanos) {
+		this.nanos[phase.ordinal()] = nanos;
+	}
+
+	/**
+	 * Counts the genomes that are about to be scored
+	 */
+	void countEvaluations(List<Genome> genomes, NEATHeuristic heuristic) {
+		int count = 0;
+		for (Genome g : genomes) {
+			if (EvaluationMethod.needsEvaluation(g, heuristic)) {
+				count++;
+			}
+		}
+		evaluations = count;
+	}
+
+	/**
+	 * Computes the fitness and size statistics of the evaluated population
+	 */
+	void measurePopulation(List<Genome> genomes) {
+		populationSize = genomes.size();
+		if (genomes.isEmpty())
+			return;
+		float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+		double fitnessSum = 0;
+		long sizeSum = 0;
+		for (Genome g : genomes) {
+			float fitness = g.getFitness();
+			min = Math.min(min, fitness);
+			max = Math.max(max, fitness);
+			fitnessSum += fitness;
+			sizeSum += g.getConnections().size();
+		}
+		minFitness = min;
+		maxFitness = max;
+		meanFitness = (float) (fitnessSum / genomes.size());
+		meanGenomeSize = (float) sizeSum / genomes.size();
+	}
+
+	void setSpeciesCount(int speciesCount) {
+		this.speciesCount = speciesCount;
+	}
+
+	void measureInnovations(InnovationRegistry innovations) {
+		connectionsCreated = innovations.getConnectionsCreated();
+		nodesCreated = innovations.getNodesCreated();
+	}
+
+	public int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * @param phase A phase of the generation
+	 * @return The time spent in the phase in nanoseconds
+	 */
+	public long getNanos(Phase phase) {
+		return nanos[phase.ordinal()];
+	}
+
+	/**
+	 * @return The time spent in all phases in nanoseconds
+	 */
+	public long getTotalNanos() {
+		long total = 0;
+		for (long n : nanos) {
+			total += n;
+		}
+		return total;
+	}
+
+	/**
+	 * @return The number of evaluated genomes
+	 */
+	public int getPopulationSize() {
+		return populationSize;
+	}
+
+	/**
+	 * @return The number of genomes that were scored, the others kept their fitness from an earlier generation
+	 */
+	public int getEvaluations() {
+		return evaluations;
+	}
+
+	public float getMinFitness() {
+		return minFitness;
+	}
+
+	public float getMeanFitness() {
+		return meanFitness;
+	}
+
+	public float getMaxFitness() {
+		return maxFitness;
+	}
+
+	/**
+	 * @return The mean number of connection genes of the evaluated genomes
+	 */
+	public float getMeanGenomeSize() {
+		return meanGenomeSize;
+	}
+
+	/**
+	 * @return The number of species after speciation
+	 */
+	public int getSpeciesCount() {
+		return speciesCount;
+	}
+
+	/**
+	 * @return The number of new connection innovations registered during the generation
+	 */
+	public int getConnectionsCreated() {
+		return connectionsCreated;
+	}
+
+	/**
+	 * @return The number of new hidden nodes registered during the generation
+	 */
+	public int getNodesCreated() {
+		return nodesCreated;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Generation ").append(generation).append(": evaluated ").append(evaluations).append('/')
+				.append(populationSize).append(", fitness ").append(minFitness).append('/')
+				.append(meanFitness).append('/').append(maxFitness).append(", species ").append(speciesCount)
+				.append(", size ").append(meanGenomeSize).append(", time");
+		for (Phase p : Phase.values()) {
+			sb.append(' ').append(p.name().toLowerCase()).append('=').append(getNanos(p) / 1000).append("us");
+		}
+		return sb.toString();
+	}
+
+}
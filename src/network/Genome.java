@@ -1,14 +1,16 @@
 package network;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
-import data.Constants;
+import data.NEATHeuristic;
+
 import network.NodeGene.Layer;
 
 /**
@@ -21,38 +23,28 @@ public class Genome implements Comparable<Genome> {
 
 	public static final float NODE_PROB = 0.03f;
 	public static final float CONNECTION_PROB = 0.05f;
+	public static final int CONNECTION_ATTEMPTS = 20;
 
 	public static final float EXCESS_WEIGHT = 1;
 	public static final float DISJOINT_WEIGHT = 1;
 	public static final float MATCHING_WEIGHT = 0.4f;
 
+	public static AtomicInteger ai = new AtomicInteger();
+	
+	private final int id = ai.getAndIncrement();
+	private int version;
+	/** The version of this genome when its fitness was last computed, or -1 if it never was */
+	private int evaluatedVersion = -1;
 	private ArrayList<NodeGene> nodes;
+	/** Always sorted by innovation number, which allows merging the connections of two genomes in linear time */
 	private ArrayList<ConnectionGene> connections;
 	private float fitness;
 	private Core core;
 
-	private ArrayList<NodeGene> seenNodes;
-	private HashMap<NodeGene, ArrayList<ConnectionGene>> nodeInputs;
-	private HashMap<NodeGene, Float> nodeValues;
+	/** The order in which the nodes can be evaluated, used to check whether a new connection would create a loop */
+	private TopologicalOrder order = new TopologicalOrder();
+	private volatile Phenotype phenotype;
 	
-	/**
-	 * Constructor method used for breeding a genome
-	 * 
-	 * @param parent1 The first parent from which this genome was bred
-	 * @param parent2 The second parent from which this genome was bred
-	 * @param core The core from which all variables and information are gained
-	 * @param connections The {@link ConnectionGene}s present in this bred genome
-	 * @param nodes The {@link NodeGene}s used in this bred genome
-	 * @param nodeInputs Map for each {@link NodeGene} which {@link ConnectionGene}s have it as output
-	 */
-	public Genome(Core core, ArrayList<ConnectionGene> connections, ArrayList<NodeGene> nodes,
-			HashMap<NodeGene, ArrayList<ConnectionGene>> nodeInputs) {
-		this.core = core;
-		this.connections = connections;
-		this.nodes = nodes;
-		this.nodeInputs = nodeInputs;
-	}
-
 	/**
 	 * General constructor for creating a genome
 	 * 
@@ -62,164 +54,106 @@ public class Genome implements Comparable<Genome> {
 		this.core = core;
 		this.connections = new ArrayList<>();
 		this.nodes = new ArrayList<>();
-		this.nodeInputs = new HashMap<>();
 	}
 
 	/**
 	 * Breed this genome with another to create a child genome of matching, disjoint and excess {@link ConnectionGene}s
 	 * 
 	 * @param p The other genome parent
+	 * @param random The random stream of the child
 	 * @return The child genome that was bred from this and the given parent
 	 */
-	public Genome breed(Genome p) {
+	public Genome breed(Genome p, SplittableRandom random) {
 		//Check whether one genome has a greater fitness, and call breed accordingly
 		if (p.fitness > fitness) {
-			return breed(p, this, false);
+			return breed(p, this, false, random);
 		}
 		if (p.fitness < fitness) {
-			return breed(this, p, false);
+			return breed(this, p, false, random);
 		}
-		return breed(this, p, true);
+		return breed(this, p, true, random);
 	}
 
 	/**
-	 * Breed two genomes with each other to create a child genome of matching, disjoint and excess {@link ConnectionGene}s
+	 * Breed two genomes with each other to create a child genome of matching, disjoint and excess {@link ConnectionGene}s.
+	 * Matching genes take the weight of a random parent and are active if they are active in the better parent,
+	 * disjoint and excess genes are taken from the better parent, or from both at random if neither parent is fitter.
+	 * {@link CompactGenome#breed} follows the same rule.
 	 * 
 	 * @param betterParent The parent genome with the higher fitness (if applicable)
 	 * @param worseParent The parent genome with the lower fitness (if applicable)
 	 * @param randomize Will randomize disjoint and excess {@link ConnectionGene}s if applicable. True if no parent is fitter than the other, else false.
+	 * @param random The random stream of the child
 	 * @return The child genome that was bred from the given parents
 	 */
-	private Genome breed(Genome betterParent, Genome worseParent, boolean randomize) {
-		HashMap<Integer, ConnectionGene> betterParentConnections = new HashMap<>();
-		HashMap<Integer, ConnectionGene> worseParentConnections = new HashMap<>();
-
-		for (ConnectionGene cg : betterParent.getConnections()) {
-			betterParentConnections.put(cg.getInnovationNumber(), cg.copy());
-		}
-		for (ConnectionGene cg : worseParent.getConnections()) {
-			worseParentConnections.put(cg.getInnovationNumber(), cg.copy());
-		}
-		
-		//Store for both better parent and worse parent matching genes, they are both required for randomized weight selection
-		HashMap<Integer, ConnectionGene> betterParentMatchings = new HashMap<>();
-		HashMap<Integer, ConnectionGene> worseParentMatchings = new HashMap<>();
-		
-		for (int innovationNumber : betterParentConnections.keySet()) {
-			if (worseParentConnections.containsKey(innovationNumber)) {
-				betterParentMatchings.put(innovationNumber, betterParentConnections.get(innovationNumber));
-				worseParentMatchings.put(innovationNumber, worseParentConnections.get(innovationNumber));
-			}
-		}
-		
-		ArrayList<NodeGene> nodes = new ArrayList<>();
-		
-		
-		for (NodeGene ng : this.nodes.stream().filter(n -> n.getLayer() == Layer.INPUT || n.getLayer() == Layer.OUTPUT).collect(Collectors.toList())) {
-			nodes.add(ng);
-		}
-		
-		//Randomize the weights of the matching ConnectionGenes and generate the child's connections and nodeInputs.
-		HashMap<NodeGene, ArrayList<ConnectionGene>> nodeInputs = new HashMap<>();
-		ArrayList<ConnectionGene> childConnections = new ArrayList<>();
-		for (int kcg : betterParentMatchings.keySet()) {
-			ConnectionGene childCg = betterParentMatchings.get(kcg).copy();
-			if (Constants.rand.nextBoolean()) {
-				childCg.setWeight(betterParentMatchings.get(kcg).getWeight());
-			} else {
-				childCg.setWeight(worseParentMatchings.get(kcg).getWeight());
-			}
-			childConnections.add(childCg);
-			if (!nodes.contains(childCg.getInput()))
-				nodes.add(childCg.getInput());
-			if (!nodes.contains(childCg.getOutput()))
-				nodes.add(childCg.getOutput());
-
-			NodeGene output = childCg.getOutput();
-			if (!nodeInputs.containsKey(output)) {
-				nodeInputs.put(output, new ArrayList<>());
-			}
-			nodeInputs.get(output).add(childCg);
+	private Genome breed(Genome betterParent, Genome worseParent, boolean randomize, SplittableRandom random) {
+		Genome child = new Genome(core);
+		for (NodeGene ng : nodes) {
+			if (ng.getLayer() == Layer.INPUT || ng.getLayer() == Layer.OUTPUT)
+				child.includeNode(ng);
 		}
-		
-		//All ConnectionGenes - matchings = disjoint and excess ConnectionGenes
-		betterParentConnections.keySet().removeAll(betterParentMatchings.keySet());
-		worseParentConnections.keySet().removeAll(worseParentMatchings.keySet());
-		
-		
-		for (NodeGene n : nodes) {
-			if (!nodeInputs.containsKey(n))
-				nodeInputs.put(n, new ArrayList<>());
-		}
-		
-		//Generate a child genome and return it
-		Genome child = new Genome(core, childConnections, nodes, nodeInputs);
-		
-		if (randomize) {
-			//If randomized, select for each disjoint and excess ConnectionGene whether to add it to the child or not
-			for (ConnectionGene cg : betterParentConnections.values()) {
-				if (Constants.rand.nextBoolean()) {					
-					if (!child.nodeInputs.containsKey(cg.getInput()))
-						child.nodeInputs.put(cg.getInput(), new ArrayList<>());
-					if (!child.nodeInputs.containsKey(cg.getOutput()))
-						child.nodeInputs.put(cg.getOutput(), new ArrayList<>());
-					
-					if (!child.containsPath(cg.getOutput(), cg.getInput())) {						
-						child.connections.add(cg);
-						if (!child.nodes.contains(cg.getInput()))
-							child.nodes.add(cg.getInput());
-						if (!child.nodes.contains(cg.getOutput()))
-							child.nodes.add(cg.getOutput());
-						child.nodeInputs.get(cg.getOutput()).add(cg);
+
+		ArrayList<ConnectionGene> better = betterParent.connections;
+		ArrayList<ConnectionGene> worse = worseParent.connections;
+		//Disjoint and excess ConnectionGenes picked at random, only added if they do not create a loop
+		ArrayList<ConnectionGene> candidates = new ArrayList<>();
+		int i = 0, j = 0;
+		while (i < better.size() || j < worse.size()) {
+			int betterInnovation = i < better.size() ? better.get(i).getInnovationNumber() : Integer.MAX_VALUE;
+			int worseInnovation = j < worse.size() ? worse.get(j).getInnovationNumber() : Integer.MAX_VALUE;
+			if (betterInnovation == worseInnovation) {
+				//Matching ConnectionGenes take the weight of either parent, a copy is only needed if the weight is taken
+				//from the worse parent while the better parent's gene differs in whether it is active
+				ConnectionGene childCg = better.get(i);
+				if (!random.nextBoolean()) {
+					ConnectionGene worseCg = worse.get(j);
+					if (worseCg.isActive() == childCg.isActive()) {
+						childCg = worseCg;
+					} else {
+						childCg = childCg.copy();
+						childCg.setWeight(worseCg.getWeight());
 					}
 				}
-			}
-			
-			for (ConnectionGene cg : worseParentConnections.values()) {				
-				if (Constants.rand.nextBoolean()) {		
-					if (!child.nodeInputs.containsKey(cg.getInput()))
-						child.nodeInputs.put(cg.getInput(), new ArrayList<>());
-					if (!child.nodeInputs.containsKey(cg.getOutput()))
-						child.nodeInputs.put(cg.getOutput(), new ArrayList<>());
-					
-					if (!child.containsPath(cg.getOutput(), cg.getInput())) {						
-						child.connections.add(cg);
-						if (!child.nodes.contains(cg.getInput()))
-							child.nodes.add(cg.getInput());
-						if (!child.nodes.contains(cg.getOutput()))
-							child.nodes.add(cg.getOutput());
-						child.nodeInputs.get(cg.getOutput()).add(cg);
-					}
+				child.adoptConnection(childCg);
+				i++;
+				j++;
+			} else if (betterInnovation < worseInnovation) {
+				//The better parent's genes form a network without loops, so they can always be added
+				if (!randomize) {
+					child.adoptConnection(better.get(i));
+				} else if (random.nextBoolean()) {
+					candidates.add(better.get(i));
 				}
-			}
-		} else {
-			
-			
-			child.connections.addAll(betterParentConnections.values());
-//			
-			for (ConnectionGene cg : child.connections) {
-				if (!child.nodes.contains(cg.getInput()))
-					child.nodes.add(cg.getInput());
-				if (!child.nodes.contains(cg.getOutput()))
-					child.nodes.add(cg.getOutput());
-			}
-			
-			for (NodeGene n : child.nodes) {
-				if (!child.nodeInputs.containsKey(n)) {
-					child.nodeInputs.put(n, new ArrayList<>());
+				i++;
+			} else {
+				if (randomize && random.nextBoolean()) {
+					candidates.add(worse.get(j));
 				}
+				j++;
 			}
-			
-			for (ConnectionGene cg : betterParentConnections.values()) {
-				child.nodeInputs.get(cg.getOutput()).add(cg);
+		}
+
+		for (ConnectionGene cg : candidates) {
+			if (!child.order.createsCycle(cg.getInput().getInnovationNumber(), cg.getOutput().getInnovationNumber())) {
+				child.adoptConnection(cg);
 			}
 		}
-		
-		
-		
 		return child;
 	}
 	
+	/**
+	 * Adds a {@link ConnectionGene} of a parent without copying it. The gene is marked as shared, so whichever genome
+	 * changes it first replaces it by its own copy.
+	 * 
+	 * @param connection The gene of a parent
+	 */
+	private void adoptConnection(ConnectionGene connection) {
+		if (!connection.isShared()) {
+			connection.markShared();
+		}
+		insertConnection(connection);
+	}
+	
 
 	/**
 	 * Calculates the distance between this and a given genome, used for speciation
@@ -228,319 +162,295 @@ public class Genome implements Comparable<Genome> {
 	 * @return The distance between this and the given genome
 	 */
 	public float computeDistance(Genome genome) {
-
-		ArrayList<ConnectionGene> connectionsGenome1 = getConnections();
-		ArrayList<ConnectionGene> connectionsGenome2 = genome.getConnections();
-
-		int maxInnovation = 0;
-		Genome maxGenome = null;
-		Genome minGenome = null;
-
-		//Find the genome with the newest ConnectionGene, store it in maxGenome
-		for (ConnectionGene cg : connectionsGenome1) {
-			if (cg.getInnovationNumber() > maxInnovation) {
-				maxInnovation = cg.getInnovationNumber();
-				maxGenome = this;
-				minGenome = genome;
-			}
-		}
-		for (ConnectionGene cg : connectionsGenome2) {
-			if (cg.getInnovationNumber() > maxInnovation) {
-				maxInnovation = cg.getInnovationNumber();
-				maxGenome = genome;
-				minGenome = this;
-			}
-		}
-		if(maxGenome == null) {
-			maxGenome = this;
-			minGenome = genome;
-		}		
-
-		//Store for both the genome with the newest and the other genome the ConnectionGenes, stored with innovation number
-		HashMap<Integer, ConnectionGene> maxGenomeMatchings = new HashMap<>();
-		HashMap<Integer, ConnectionGene> minGenomeMatchings = new HashMap<>();
-		int matchingIndex = 0;
-		
-		for (ConnectionGene maxgc : maxGenome.getConnections()) {
-			if ((matchingIndex = minGenome.getConnections().indexOf(maxgc)) >= 0) {
-				maxGenomeMatchings.put(maxgc.getInnovationNumber(), maxgc);
-				ConnectionGene mingc = minGenome.getConnections().get(matchingIndex);
-				minGenomeMatchings.put(mingc.getInnovationNumber(), mingc);
-			}
-		}
-
-		//Find all non-matching ConnectionGenes
-		List<ConnectionGene> nonMatchingsConnections1 = minGenome.getConnections().stream()
-				.collect(Collectors.toList());
-		nonMatchingsConnections1.removeAll(maxGenomeMatchings.values());
-
-		Collections.sort(maxGenome.getConnections());
-
-		//Determine the excessCount
-		int excessCount = 0;
-		for (int i = maxGenome.getConnections().size() - 1; i > 0; i--) {
-			int min = maxGenome.getConnections().get(i - 1).getInnovationNumber();
-			int max = maxGenome.getConnections().get(i).getInnovationNumber();
-			if (minGenome.getConnections().stream()
-					.anyMatch(c -> c.getInnovationNumber() > min && c.getInnovationNumber() < max)) {
-				excessCount = maxGenome.getConnections().size() - 1 - i;
+		ArrayList<ConnectionGene> connections1 = connections;
+		ArrayList<ConnectionGene> connections2 = genome.connections;
+		int size1 = connections1.size();
+		int size2 = connections2.size();
+
+		//Merge both lists, which are sorted by innovation number
+		int i = 0, j = 0;
+		int matchingCount = 0;
+		int disjointCount = 0;
+		float weightDifference = 0;
+		while (i < size1 && j < size2) {
+			ConnectionGene cg1 = connections1.get(i);
+			ConnectionGene cg2 = connections2.get(j);
+			int innovation1 = cg1.getInnovationNumber();
+			int innovation2 = cg2.getInnovationNumber();
+			if (innovation1 == innovation2) {
+				matchingCount++;
+				weightDifference += Math.abs(cg1.getWeight() - cg2.getWeight());
+				i++;
+				j++;
+			} else if (innovation1 < innovation2) {
+				disjointCount++;
+				i++;
+			} else {
+				disjointCount++;
+				j++;
 			}
 		}
+		//Whatever remains in one of the lists is newer than the newest ConnectionGene of the other
+		int excessCount = (size1 - i) + (size2 - j);
 
-		//Determine the disjointCount
-		int disjointCount = (minGenome.getConnections().size() - maxGenomeMatchings.size())
-				+ (maxGenome.getConnections().size() - maxGenomeMatchings.size() - excessCount);
-
-		//Find the weight average of the genome with the newest ConnectionGene
-		float weightAverage = 0;
-		if (!maxGenomeMatchings.isEmpty()) {
-			float sum = 0;
-			for (Integer innovationKey : maxGenomeMatchings.keySet()) {
-				sum += Math.abs(maxGenomeMatchings.get(innovationKey).getWeight()
-						- minGenomeMatchings.get(innovationKey).getWeight());
-			}
-			weightAverage = sum / maxGenomeMatchings.size();
-		}
+		float weightAverage = matchingCount == 0 ? 0 : weightDifference / matchingCount;
 
 		return excessCount * EXCESS_WEIGHT + disjointCount * DISJOINT_WEIGHT + weightAverage * MATCHING_WEIGHT;
 	}
 	
 	/**
-	 * Mutates this genome by calling {@link #mutateNodeGene}, {@link #mutateConnectionGene} and mutating each
-	 * {@link ConnectionGene}'s weight.
+	 * Mutates this genome by calling {@link #mutateWeights} and {@link #mutateStructure}. The compiled
+	 * {@link Phenotype} is only rebuilt if the structure changed.
+	 * 
+	 * @param random The random stream of this genome for the current generation
 	 */
-	public void mutate() {
-		mutateNodeGene();
-		for (ConnectionGene cg : connections) {
-			cg.mutate();
+	public void mutate(SplittableRandom random) {
+		mutateWeights(random);
+		mutateStructure(random);
+	}
+	
+	/**
+	 * Mutates each {@link ConnectionGene}'s weight. Only touches this genome, so different genomes can have their
+	 * weights mutated concurrently.
+	 * 
+	 * @param random The random stream of this genome for the current generation
+	 */
+	public void mutateWeights(SplittableRandom random) {
+		boolean changed = false;
+		for (int i = 0; i < connections.size(); i++) {
+			float weight = connections.get(i).getWeight();
+			float mutated = ConnectionGene.mutateWeight(weight, random);
+			if (mutated != weight) {
+				ownConnection(i).setWeight(mutated);
+				changed = true;
+			}
 		}
-		mutateConnectionGene();
+		if (changed) {
+			weightsChanged();
+		}
+	}
+	
+	/**
+	 * Mutates the structure of this genome by calling {@link #mutateNodeGene} and {@link #mutateConnectionGene}. New
+	 * {@link NodeGene}s and {@link ConnectionGene}s get their innovation numbers from the {@link InnovationRegistry}, so
+	 * genomes should have their structure mutated in a fixed order for the numbers to be reproducible.
+	 * 
+	 * @param random The random stream of this genome for the current generation
+	 * @return Whether the structure changed
+	 */
+	public boolean mutateStructure(SplittableRandom random) {
+		boolean structureChanged = mutateNodeGene(random);
+		structureChanged |= mutateConnectionGene(random);
+		return structureChanged;
 	}
 
 	/**
 	 * Mutates this genome in the sense that a {@link NodeGene} should be added in the center of a {@link ConnectionGene}
 	 * and to the {@link Core} if applicable
+	 * 
+	 * @param random The random stream of this genome for the current generation
+	 * @return Whether a {@link NodeGene} was added
 	 */
-	public void mutateNodeGene() {
+	public boolean mutateNodeGene(SplittableRandom random) {
 		// Determine whether node should be added
 		if (connections.isEmpty())
-			return;
+			return false;
 			
-		if (Constants.rand.nextFloat() >= NODE_PROB)
-			return;
+		if (random.nextFloat() >= NODE_PROB)
+			return false;
 		
 
-		ArrayList<NodeGene> unusedNodes = new ArrayList<>();
-		List<NodeGene> coreNodes = core.nodes.entrySet().stream().map(e -> e.getValue()).collect(Collectors.toList());
-		
-		// Collect all nodes NOT in this genome, but in core
-		for (NodeGene ng : coreNodes) {
-			if (!nodes.contains(ng)) {
-				unusedNodes.add(ng);
-			}
+		int activeCount = 0;
+		for (ConnectionGene c : connections) {
+			if (c.isActive())
+				activeCount++;
 		}
-		NodeGene ng = null;
-		if (unusedNodes.isEmpty()) {
-			// Create a new node and add it to the core list
-			ng = new NodeGene(Layer.HIDDEN);
-			core.nodes.put(ng.getInnovationNumber(), ng);
-			nodes.add(ng);
-			if (!nodeInputs.containsKey(ng))
-				nodeInputs.put(ng, new ArrayList<>());
-		} else {
-			// Select first node in the list (it's random due to entrySet's random ordering)
-			nodes.add(ng = unusedNodes.get(0));
-			if (!nodeInputs.containsKey(ng))
-				nodeInputs.put(ng, new ArrayList<>());
+		if (activeCount == 0)
+			return false;
+		int index = -1;
+		for (int k = random.nextInt(activeCount); k >= 0; k--) {
+			do {
+				index++;
+			} while (!connections.get(index).isActive());
 		}
-
-		ConnectionGene cg = connections.stream().filter(c -> c.isActive()).collect(Collectors.toList())
-							.get(Constants.rand.nextInt(connections.size()));
-		
+		ConnectionGene cg = ownConnection(index);
 		cg.setActive(false);
 
-		ConnectionGene coreClone = null;
-		for (ConnectionGene c : core.connections.values()) {
-			if (c.equals2(cg.getInput(), ng)) {
-				coreClone = c;
-			}
-		}
-		if (coreClone == null) {
-			coreClone = new ConnectionGene(cg.getInput(), ng);
-			core.connections.put(coreClone.getInnovationNumber(), coreClone);
-			coreClone.setWeight(1);
-		}
-		// TODO: CHECKING FOR PATH IS NOT CALLED WHENEVER A CONNECTION IS ADDED????
-		nodeInputs.put(ng, new ArrayList<>());
-		nodeInputs.get(ng).add(coreClone);
-		if (!connections.contains(coreClone))
-			connections.add(coreClone);
-		coreClone = null;
-		for (ConnectionGene c : core.connections.values()) {
-			if (c.equals2(ng, cg.getOutput())) {
-				coreClone = c;
-			}
-		}
-		if (coreClone == null) {
-			coreClone = new ConnectionGene(ng, cg.getOutput());
-			core.connections.put(coreClone.getInnovationNumber(), coreClone);
-			coreClone.setWeight(cg.getWeight());
-		}
-		nodeInputs.get(cg.getOutput()).add(coreClone);
-		if (!connections.contains(coreClone))
-			connections.add(coreClone);
+		// Reuse a node from an earlier split of the same connection, or create a new one in the core
+		NodeGene ng = core.innovations.getSplitNode(cg.getInnovationNumber(),
+				n -> order.contains(n.getInnovationNumber()));
+		includeNode(ng);
+
+		ConnectionGene inputConnection = core.innovations.getConnection(cg.getInput(), ng).copy();
+		inputConnection.setWeight(1);
+		insertConnection(inputConnection);
+		ConnectionGene outputConnection = core.innovations.getConnection(ng, cg.getOutput()).copy();
+		outputConnection.setWeight(cg.getWeight());
+		insertConnection(outputConnection);
+		structureChanged();
+		return true;
 	}
 
 	/**
 	 * Mutates this genome in the sense that a {@link ConnectionGene} is added to the network. Random
 	 * nodes are also selected with which to connect.
+	 * 
+	 * @param random The random stream of this genome for the current generation
+	 * @return Whether a {@link ConnectionGene} was added
 	 */
-	public void mutateConnectionGene() {
+	public boolean mutateConnectionGene(SplittableRandom random) {
 		// Determine whether connectionGene should be added
-		if (Constants.rand.nextFloat() >= CONNECTION_PROB)
-			return;
+		if (random.nextFloat() >= CONNECTION_PROB)
+			return false;
 
-		ArrayList<ConnectionGene> unusedConnections = new ArrayList<>();
-		List<ConnectionGene> coreConnections = core.connections.entrySet().stream()
-				.filter(e -> nodes.contains(e.getValue().getInput()) && nodes.contains(e.getValue().getOutput()))
-				.map(e -> e.getValue())
+		List<NodeGene> startNodes = nodes.stream()
+				.filter(n -> n.getLayer() == Layer.HIDDEN || n.getLayer() == Layer.INPUT)
 				.collect(Collectors.toList());
+		List<NodeGene> endNodes = nodes.stream()
+				.filter(n -> n.getLayer() == Layer.HIDDEN || n.getLayer() == Layer.OUTPUT)
+				.collect(Collectors.toList());
+		if (startNodes.isEmpty() || endNodes.isEmpty())
+			return false;
 
-		// Collect all connections NOT in this genome, but in core
-		for (ConnectionGene cg : coreConnections) {
-			if (!connections.contains(cg)) {
-				unusedConnections.add(cg);
-			}
-		}
-
-		if (unusedConnections.isEmpty()) {	
-			// Create a new connection and add it to the core list
-			List<NodeGene> startNodes = nodes.stream()
-					.filter(n -> n.getLayer() == Layer.HIDDEN || n.getLayer() == Layer.INPUT)
-					.collect(Collectors.toList());
-			NodeGene start = startNodes.get(Constants.rand.nextInt(startNodes.size()));
-			List<NodeGene> endNodes = nodes.stream()
-					.filter(n -> (n.getLayer() == Layer.HIDDEN || n.getLayer() == Layer.OUTPUT)
-							&& !n.equals(start))
-					.collect(Collectors.toList());
-
-			NodeGene end = null;
-			for (NodeGene ng : endNodes) {
-				try {
-					coreConnections.stream().filter(c -> c.equals2(start, ng)).findFirst().get();
-				} catch (NoSuchElementException e) {
-					end = ng;
-					break;
-				}
-			}
-			if (end == null)
-				return;
-			// Check for loops. If there is one after addition, do not add
-			if (!containsPath(end, start)) {
-				ConnectionGene cg = new ConnectionGene(start, end);
-				ConnectionGene cgCopy = cg.copy();
-				connections.add(cgCopy);
-				
-				core.connections.put(cg.getInnovationNumber(), cg);
-				nodeInputs.get(end).add(cgCopy);
-			}
-		} else {
-			// Select first connection in the list (it's random due to entrySet's random
-			// ordering)
-			
-			ConnectionGene cgCopy = unusedConnections.get(0).copy();
+		for (int attempt = 0; attempt < CONNECTION_ATTEMPTS; attempt++) {
+			NodeGene start = startNodes.get(random.nextInt(startNodes.size()));
+			NodeGene end = endNodes.get(random.nextInt(endNodes.size()));
+			if (start.equals(end))
+				continue;
+			// Skip connections this genome already has
+			ConnectionGene existing = core.innovations.findConnection(start, end);
+			if (existing != null && containsConnection(existing))
+				continue;
 			// Check for loops. If there is one after addition, do not add
-			if (!containsPath(cgCopy.getOutput(), cgCopy.getInput())) {
-				connections.add(cgCopy);
-				nodeInputs.get(cgCopy.getOutput()).add(cgCopy);
-			}
+			if (order.createsCycle(start.getInnovationNumber(), end.getInnovationNumber()))
+				continue;
+			// Connections made before by any genome keep their innovation number
+			ConnectionGene cg = core.innovations.getConnection(start, end).copy();
+			cg.mutateWeightRandom(random);
+			insertConnection(cg);
+			structureChanged();
+			return true;
 		}
+		return false;
 	}
 
 	/**
-	 * Setup method for finding this genome's output given an input.
+	 * Finds this genome's output given an input.
 	 * 
 	 * @param input The set of values to be used in the input layer
 	 * @return The value contained in the {@link NodeGene}s in the output layer
 	 */
 	public ArrayList<Float> computeOutput(ArrayList<Float> input) {
-		nodeValues = new HashMap<>();
-
-		//Set the values of the input nodes to the given input values
-		for (int i = 0; i < input.size(); i++) {
-			nodeValues.put(core.nodes.get(i), input.get(i));
+		float[] in = new float[input.size()];
+		for (int i = 0; i < in.length; i++) {
+			in[i] = input.get(i);
 		}
-		//For each output node, find the output and return it
-		List<NodeGene> outputNodes = nodes.stream().filter(n -> n.getLayer() == Layer.OUTPUT).collect(Collectors.toList());
-		ArrayList<Float> outputList = new ArrayList<>();
-		for (NodeGene ng : outputNodes) {
-			computeNodeOutput(ng, 0);
-			outputList.add(nodeValues.get(ng));
+		float[] out = computeOutput(in);
+		ArrayList<Float> outputList = new ArrayList<>(out.length);
+		for (float f : out) {
+			outputList.add(f);
 		}
 		return outputList;
 	}
 	
 	/**
-	 * Recursive method used for setting a given {@link NodeGene}'s output and storing it within the genome for later use
+	 * Finds this genome's output given an input using its compiled {@link Phenotype}.
 	 * 
-	 * @param ng The node to be evaluated
+	 * @param input The set of values to be used in the input layer
+	 * @return The values of the {@link NodeGene}s in the output layer
 	 */
-	private void computeNodeOutput(NodeGene ng, int recursion) {
-		float sum = 0f;
-		//Loop through all ConnectionGenes which have the current node as output
-		if (nodeInputs.get(ng) == null) {
-			nodeValues.put(ng, 0f);
-			return;
-		}
-		for (ConnectionGene cg : nodeInputs.get(ng)) {
-			//Check if they have already been given a value and if so, use the current ConnectionGene's weight to add to the sum.
-			//If not, recursive call to find that node's value.
-			if (!nodeValues.containsKey(cg.getInput())) {
-				if (recursion > 1000) {
-					System.out.println("Encountered a looping error");
-					System.out.println(this);
-					System.out.println(containsPath(core.nodes.get(3), core.nodes.get(4)));
-					System.out.println(containsPath(core.nodes.get(4), core.nodes.get(3)));
-					System.exit(0);
-				}
-				computeNodeOutput(cg.getInput(), recursion + 1);
-			}
-			sum+= nodeValues.get(cg.getInput()) * cg.getWeight();
+	public float[] computeOutput(float[] input) {
+		return getPhenotype().computeOutput(input);
+	}
+	
+	/**
+	 * Finds this genome's output for a whole set of inputs in a single pass over its compiled {@link Phenotype}.
+	 * 
+	 * @param inputs The values to be used in the input layer, one row per sample
+	 * @return The values of the {@link NodeGene}s in the output layer, one row per sample
+	 */
+	public float[][] computeOutputs(float[][] inputs) {
+		int samples = inputs.length;
+		int width = samples == 0 ? 0 : inputs[0].length;
+		float[] flat = new float[samples * width];
+		for (int s = 0; s < samples; s++) {
+			System.arraycopy(inputs[s], 0, flat, s * width, width);
 		}
-		//Apply activation function to the node depending on whether it is within the hidden layer or output layer
-		if (ng.getLayer() == Layer.HIDDEN) {
-			sum = core.activationFunctionHidden.applyActivation(sum);
-		} else {
-			sum = core.activationFunctionOutput.applyActivation(sum);
+		Phenotype p = getPhenotype();
+		float[] out = p.computeOutputs(flat, samples);
+		int outputWidth = p.getNumOutputs();
+		float[][] outputs = new float[samples][outputWidth];
+		for (int s = 0; s < samples; s++) {
+			System.arraycopy(out, s * outputWidth, outputs[s], 0, outputWidth);
 		}
-		nodeValues.put(ng, sum);
+		return outputs;
 	}
 	
-	private boolean containsPath(NodeGene start, NodeGene end) {
-		System.out.println("Checking for path");
-		seenNodes = new ArrayList<>();
-		return checkForPath(start, end);
+	/**
+	 * Finds this genome's output for a whole set of inputs in a single pass over its compiled {@link Phenotype}.
+	 * 
+	 * @param inputs The values to be used in the input layer of all samples in row-major order
+	 * @param samples The number of samples
+	 * @return The values of the {@link NodeGene}s in the output layer of all samples in row-major order
+	 */
+	public float[] computeOutputs(float[] inputs, int samples) {
+		return getPhenotype().computeOutputs(inputs, samples);
 	}
 	
-	private boolean checkForPath(NodeGene start, NodeGene end) {
-		if (seenNodes.contains(end))
-			return false;
-		seenNodes.add(end);
-		List<NodeGene> parents = nodeInputs.get(end).stream().map(c -> c.getInput()).collect(Collectors.toList());
-		if (parents.contains(start)) {
-			return true;
-		} else {
-			for (NodeGene p : parents) {
-				if (checkForPath(start, p))
-					return true;
+	/**
+	 * Called whenever {@link NodeGene}s or {@link ConnectionGene}s are added, the {@link Phenotype} is recompiled on its
+	 * next use
+	 */
+	private void structureChanged() {
+		phenotype = null;
+		version++;
+	}
+	
+	/**
+	 * Called whenever only the weights of the {@link ConnectionGene}s may have changed
+	 */
+	private void weightsChanged() {
+		Phenotype p = phenotype;
+		if (p != null) {
+			p.updateWeights(connections);
+		}
+		version++;
+	}
+	
+	/**
+	 * Returns the compiled network of this genome, compiling it first if the structure has changed since the last call
+	 * 
+	 * @return The {@link Phenotype} of this genome
+	 */
+	public Phenotype getPhenotype() {
+		Phenotype p = phenotype;
+		if (p == null) {
+			synchronized (this) {
+				if ((p = phenotype) == null) {
+					phenotype = p = Phenotype.compile(this);
+				}
 			}
 		}
-		return false;
+		return p;
 	}
 	
 	public Core getCore() {
 		return core;
 	}
+	
+	/**
+	 * @return A number unique to this genome
+	 */
+	public int getId() {
+		return id;
+	}
+	
+	/**
+	 * @return A number that changes whenever this genome is mutated
+	 */
+	public int getVersion() {
+		return version;
+	}
 
 	public float getFitness() {
 		return fitness;
@@ -549,17 +459,102 @@ public class Genome implements Comparable<Genome> {
 	public void setFitness(float fitness) {
 		this.fitness = fitness;
 	}
+	
+	/**
+	 * Computes the fitness of this genome and remembers that it belongs to the current version
+	 * 
+	 * @param heuristic The heuristic computing the fitness
+	 */
+	public void evaluate(NEATHeuristic heuristic) {
+		int v = version;
+		fitness = heuristic.computeFitness(this);
+		evaluatedVersion = v;
+	}
+	
+	/**
+	 * Gives this genome a fitness computed earlier for an identical genome
+	 * 
+	 * @param fitness The fitness of the identical genome
+	 */
+	void setEvaluatedFitness(float fitness) {
+		this.fitness = fitness;
+		evaluatedVersion = version;
+	}
+	
+	/**
+	 * @return Whether the fitness of this genome was computed by {@link #evaluate} after its last change
+	 */
+	public boolean isEvaluated() {
+		return evaluatedVersion == version;
+	}
 
+	/**
+	 * @return The {@link ConnectionGene}s of this genome sorted by innovation number. They may be shared with other
+	 *         genomes and should only be changed through the mutate methods of this genome.
+	 */
 	public ArrayList<ConnectionGene> getConnections() {
 		return connections;
 	}
 
 	public void addConnections(ArrayList<ConnectionGene> connections) {
-		this.connections.addAll(connections);
+		for (ConnectionGene cg : connections) {
+			insertConnection(cg);
+		}
 	}
 
 	public void addConnection(ConnectionGene connection) {
-		connections.add(connection);
+		insertConnection(connection);
+	}
+	
+	/**
+	 * Adds a {@link ConnectionGene} at its sorted position, if this genome does not contain it yet
+	 * 
+	 * @param connection The connection to be added
+	 * @return Whether the connection was added
+	 */
+	private boolean insertConnection(ConnectionGene connection) {
+		int index = Collections.binarySearch(connections, connection);
+		if (index >= 0)
+			return false;
+		includeNode(connection.getInput());
+		includeNode(connection.getOutput());
+		order.addEdge(connection.getInput().getInnovationNumber(), connection.getOutput().getInnovationNumber());
+		connections.add(-index - 1, connection);
+		structureChanged();
+		return true;
+	}
+	
+	/**
+	 * Adds a {@link NodeGene} to this genome, if it does not contain it yet
+	 * 
+	 * @param ng The node to be added
+	 */
+	private void includeNode(NodeGene ng) {
+		if (!order.contains(ng.getInnovationNumber())) {
+			order.addNode(ng.getInnovationNumber());
+			nodes.add(ng);
+		}
+	}
+	
+	/**
+	 * Returns the {@link ConnectionGene} at the given index so it can be changed, first replacing it by a private copy
+	 * if it is shared with other genomes. The copy takes the place of the original, so the order of the connections
+	 * and the compiled {@link Phenotype} stay valid.
+	 * 
+	 * @param index The index of the connection
+	 * @return The connection at the given index, owned by this genome only
+	 */
+	private ConnectionGene ownConnection(int index) {
+		ConnectionGene cg = connections.get(index);
+		if (cg.isShared()) {
+			cg = cg.copy();
+			connections.set(index, cg);
+		}
+		return cg;
+	}
+	
+	private boolean containsConnection(ConnectionGene connection) {
+		return Collections.binarySearch(connections, connection) >= 0;
 	}
 
 	public ArrayList<NodeGene> getNodes() {
@@ -567,16 +562,27 @@ public class Genome implements Comparable<Genome> {
 	}
 	
 	public void addNode(NodeGene node) {
-		nodes.add(node);
+		includeNode(node);
+		structureChanged();
 	}
 	
 	public void addNodes(Collection<NodeGene> nodes) {
-		this.nodes.addAll(nodes);
+		for (NodeGene ng : nodes) {
+			includeNode(ng);
+		}
+		structureChanged();
+	}
+	
+	/**
+	 * @return The topological order of this genome's {@link NodeGene}s, kept up to date as connections are added
+	 */
+	public TopologicalOrder getTopologicalOrder() {
+		return order;
 	}
 
 	@Override
 	public String toString() {
-		return hashCode() + "[" + connections.toString() + ", \n nodeInputs: " + nodeInputs + " \n], Fitness: " + fitness;
+		return hashCode() + "[" + connections.toString() + ", \n order: " + Arrays.toString(order.getOrder()) + " \n], Fitness: " + fitness;
 	}
 
 	@Override
@@ -0,0 +1,148 @@
+package network;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.function.Predicate;
+
+import network.NodeGene.Layer;
+
+/**
+ * Keeps track of all structural innovations of a {@link Core}. {@link ConnectionGene}s are indexed by their input and
+ * output node, so the same structural mutation always receives the same innovation number, and the hidden
+ * {@link NodeGene}s created by splitting a connection are indexed by the innovation number of that connection.
+ * 
+ * @author Siemen Geurts, Thomas van den Broek
+ *
+ */
+public class InnovationRegistry {
+
+	private Core core;
+	private HashMap<Long, ConnectionGene> connectionsByNodes = new HashMap<>();
+	private HashMap<Integer, ArrayList<NodeGene>> splitNodes = new HashMap<>();
+
+	private int connectionsCreated;
+	private int nodesCreated;
+
+	public InnovationRegistry(Core core) {
+		this.core = core;
+	}
+
+	private static long key(NodeGene input, NodeGene output) {
+		return (long) input.getInnovationNumber() << 32 | (output.getInnovationNumber() & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * @param input The input node of the connection
+	 * @param output The output node of the connection
+	 * @return The registered connection between both nodes, or null if there is none
+	 */
+	public synchronized ConnectionGene findConnection(NodeGene input, NodeGene output) {
+		return connectionsByNodes.get(key(input, output));
+	}
+
+	/**
+	 * Returns the registered connection between two nodes, registering a new connection with a new innovation number
+	 * if this is the first time these nodes are connected
+	 * 
+	 * @param input The input node of the connection
+	 * @param output The output node of the connection
+	 * @return The registered connection between both nodes
+	 */
+	public synchronized ConnectionGene getConnection(NodeGene input, NodeGene output) {
+		long key = key(input, output);
+		ConnectionGene cg = connectionsByNodes.get(key);
+		if (cg == null) {
+			cg = new ConnectionGene(input, output);
+			connectionsByNodes.put(key, cg);
+			core.connections.put(cg.getInnovationNumber(), cg);
+			connectionsCreated++;
+		}
+		return cg;
+	}
+
+	/**
+	 * Returns a hidden node to be placed in the center of a connection of a genome. Nodes created earlier by splitting
+	 * the same connection are reused if the genome does not contain them yet, otherwise a new node is registered.
+	 * 
+	 * @param splitInnovation The innovation number of the connection to be split
+	 * @param inGenome Tells whether a node is already part of the genome in which the connection is split
+	 * @return A node that is not yet part of the genome
+	 */
+	public synchronized NodeGene getSplitNode(int splitInnovation, Predicate<NodeGene> inGenome) {
+		ArrayList<NodeGene> candidates = splitNodes.get(splitInnovation);
+		if (candidates == null) {
+			candidates = new ArrayList<>();
+			splitNodes.put(splitInnovation, candidates);
+		}
+		for (NodeGene ng : candidates) {
+			if (!inGenome.test(ng)) {
+				return ng;
+			}
+		}
+		NodeGene ng = createNode();
+		candidates.add(ng);
+		return ng;
+	}
+
+	/**
+	 * Registers a new hidden node in the core
+	 * 
+	 * @return The new node
+	 */
+	public synchronized NodeGene createNode() {
+		NodeGene ng = new NodeGene(Layer.HIDDEN);
+		core.nodes.put(ng.getInnovationNumber(), ng);
+		nodesCreated++;
+		return ng;
+	}
+
+	/**
+	 * Registers a connection restored from a checkpoint
+	 * 
+	 * @param cg The restored connection
+	 */
+	synchronized void register(ConnectionGene cg) {
+		connectionsByNodes.put(key(cg.getInput(), cg.getOutput()), cg);
+		core.connections.put(cg.getInnovationNumber(), cg);
+	}
+	
+	/**
+	 * Registers a node restored from a checkpoint as created by splitting a connection
+	 * 
+	 * @param splitInnovation The innovation number of the split connection
+	 * @param ng The restored node
+	 */
+	synchronized void registerSplitNode(int splitInnovation, NodeGene ng) {
+		splitNodes.computeIfAbsent(splitInnovation, k -> new ArrayList<>()).add(ng);
+	}
+	
+	/**
+	 * @return The nodes created by splitting each connection, by innovation number of the connection
+	 */
+	synchronized HashMap<Integer, ArrayList<NodeGene>> getSplitNodes() {
+		return splitNodes;
+	}
+
+	/**
+	 * Resets the counters of innovations created during the current generation
+	 */
+	public synchronized void nextGeneration() {
+		connectionsCreated = 0;
+		nodesCreated = 0;
+	}
+
+	/**
+	 * @return The number of connections registered during the current generation
+	 */
+	public synchronized int getConnectionsCreated() {
+		return connectionsCreated;
+	}
+
+	/**
+	 * @return The number of nodes registered during the current generation
+	 */
+	public synchronized int getNodesCreated() {
+		return nodesCreated;
+	}
+
+}
@@ -0,0 +1,122 @@
+package network;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread safe cache holding a limited number of entries, evicting the least recently used entry when it is full.
+ * Keeps track of its hits and misses. The entries are spread over segments with their own lock, so threads using
+ * different segments do not wait for each other. Every segment evicts its own least recently used entry.
+ * 
+ * @author Siemen Geurts, Thomas van den Broek
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+public class LRUCache<K, V> {
+
+	/** The maximum number of segments, a power of two so a segment can be selected with a mask */
+	private static final int SEGMENTS = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4));
+
+	private final int capacity;
+	private final LinkedHashMap<K, V>[] segments;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * @param capacity The maximum number of entries kept in this cache
+	 */
+	@SuppressWarnings("unchecked")
+	public LRUCache(int capacity) {
+		this.capacity = capacity;
+		int count = Math.max(1, Math.min(SEGMENTS, Integer.highestOneBit(Math.max(1, capacity / 16))));
+		segments = new LinkedHashMap[count];
+		for (int i = 0; i < count; i++) {
+			int segmentCapacity = capacity / count + (i < capacity % count ? 1 : 0);
+			segments[i] = new LinkedHashMap<K, V>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+					return size() > segmentCapacity;
+				}
+			};
+		}
+	}
+
+	private LinkedHashMap<K, V> segment(Object key) {
+		int h = key.hashCode();
+		return segments[(h ^ h >>> 16) & segments.length - 1];
+	}
+
+	/**
+	 * @param key The key of the entry
+	 * @return The cached value, or null if there is none
+	 */
+	public V get(K key) {
+		V value;
+		LinkedHashMap<K, V> entries = segment(key);
+		synchronized (entries) {
+			value = entries.get(key);
+		}
+		if (value == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return value;
+	}
+
+	public void put(K key, V value) {
+		LinkedHashMap<K, V> entries = segment(key);
+		synchronized (entries) {
+			entries.put(key, value);
+		}
+	}
+
+	public void clear() {
+		for (LinkedHashMap<K, V> entries : segments) {
+			synchronized (entries) {
+				entries.clear();
+			}
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (LinkedHashMap<K, V> entries : segments) {
+			synchronized (entries) {
+				size += entries.size();
+			}
+		}
+		return size;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return The fraction of lookups that were answered by this cache
+	 */
+	public double getHitRate() {
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	public void resetStatistics() {
+		hits.reset();
+		misses.reset();
+	}
+
+}
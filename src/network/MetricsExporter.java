@@ -0,0 +1,69 @@
+package network;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import data.MetricsFormat;
+
+/**
+ * Writes the metrics of every generation as a line of text, so a run can be analysed while and after it runs. Each
+ * line is flushed when written, which costs little compared to a generation. A failed write is reported but does not
+ * stop the run.
+ *
+ * @author Siemen Geurts, Thomas van den Broek
+ *
+ */
+public class MetricsExporter implements MetricsListener, Closeable {
+
+	private final Writer writer;
+	private final MetricsFormat format;
+	private boolean headerWritten;
+
+	/**
+	 * @param writer The writer to which the lines are written
+	 * @param format The format of the lines
+	 */
+	public MetricsExporter(Writer writer, MetricsFormat format) {
+		this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer);
+		this.format = format;
+	}
+
+	/**
+	 * @param file The file to which the lines are written, replacing its contents
+	 * @param format The format of the lines
+	 * @throws IOException If the file could not be opened
+	 */
+	public MetricsExporter(Path file, MetricsFormat format) throws IOException {
+		this(Files.newBufferedWriter(file, StandardCharsets.UTF_8), format);
+	}
+
+	@Override
+	public synchronized void generationCompleted(GenerationMetrics metrics) {
+		try {
+			if (!headerWritten) {
+				String header = format.header();
+				if (header != null) {
+					writer.write(header);
+					writer.write('\n');
+				}
+				headerWritten = true;
+			}
+			writer.write(format.format(metrics));
+			writer.write('\n');
+			writer.flush();
+		} catch (IOException e) {
+			System.err.println("Exporting metrics of generation " + metrics.getGeneration() + " failed: " + e);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+
+}
@@ -0,0 +1,18 @@
+package network;
+
+/**
+ * Receives the {@link GenerationMetrics} of every generation of a {@link Core}
+ *
+ * @author Siemen Geurts, Thomas van den Broek
+ *
+ */
+public interface MetricsListener {
+
+	/**
+	 * Called on the evolving thread after a generation has been bred and mutated
+	 *
+	 * @param metrics The measurements of the generation
+	 */
+	void generationCompleted(GenerationMetrics metrics);
+
+}
@@ -0,0 +1,352 @@
+package network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+
+import data.ActivationFunction;
+
+/**
+ * Generates a hidden class per network, implementing {@link CompiledNetwork} with one straight-line method: every node
+ * value is a local variable, every weight a constant and every activation a direct call on its
+ * {@link ActivationFunction} constant, so the JIT can compile the whole network as a single unit. The class file is
+ * written by hand and defined with {@link Lookup#defineHiddenClass}, so it can be unloaded as soon as its phenotype is
+ * no longer used.
+ * <p>
+ * The generated code computes exactly the same values as the interpreter of {@link Phenotype}: every sum starts at 0
+ * and adds the weighted inputs of a node in the same order.
+ *
+ * @author Siemen Geurts, Thomas van den Broek
+ *
+ */
+final class NetworkCompiler {
+
+	/** The default maximum number of connections of a network to be compiled, larger networks stay interpreted */
+	public static final int DEFAULT_MAX_CONNECTIONS = 4096;
+
+	private static final int MAX_CODE_LENGTH = 65535;
+	private static final int MAX_LOCALS = 65535;
+
+	//Local variables of the generated method
+	private static final int INPUT = 1, INPUT_OFFSET = 2, OUTPUT = 3, OUTPUT_OFFSET = 4, FIRST_NODE = 5;
+
+	private static final String NAME = NetworkCompiler.class.getPackageName().replace('.', '/') + "/GeneratedNetwork";
+	private static final String ACTIVATION = ActivationFunction.class.getName().replace('.', '/');
+
+	private static final int ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, ALOAD_3 = 0x2d, ILOAD = 0x15, ILOAD_2 = 0x1c,
+			FLOAD = 0x17, FLOAD_0 = 0x22, FSTORE = 0x38, FSTORE_0 = 0x43, FCONST_0 = 0x0b, ICONST_0 = 0x03,
+			BIPUSH = 0x10, SIPUSH = 0x11, LDC = 0x12, LDC_W = 0x13, IADD = 0x60, FMUL = 0x6a, FADD = 0x62,
+			FALOAD = 0x30, FASTORE = 0x51, GETSTATIC = 0xb2, INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7,
+			RETURN = 0xb1, WIDE = 0xc4;
+
+	private static final Lookup LOOKUP = MethodHandles.lookup();
+
+	private NetworkCompiler() {
+	}
+
+	/**
+	 * Compiles a network laid out like a {@link Phenotype}: nodes in topological order and connections sorted by
+	 * their target
+	 *
+	 * @param nodeCount The number of nodes
+	 * @param inputIndices The position of each input node
+	 * @param outputIndices The position of each output node
+	 * @param activations The activation function of the node at each position, null for input nodes
+	 * @param edgeSources The position of the source node of each connection
+	 * @param edgeTargets The position of the target node of each connection
+	 * @param weights The weight of each connection
+	 * @return The compiled network, or null if the network can not be compiled because it contains a loop or is too
+	 *         large for a single method
+	 */
+	static CompiledNetwork compile(int nodeCount, int[] inputIndices, int[] outputIndices,
+			ActivationFunction[] activations, int[] edgeSources, int[] edgeTargets, float[] weights) {
+		if (FIRST_NODE + nodeCount > MAX_LOCALS)
+			return null;
+		ClassWriter cw = new ClassWriter();
+		byte[] code = cw.writeCode(nodeCount, inputIndices, outputIndices, activations, edgeSources, edgeTargets,
+				weights);
+		if (code == null)
+			return null;
+		byte[] bytes = cw.toByteArray(code, FIRST_NODE + nodeCount);
+		try {
+			Lookup hidden = LOOKUP.defineHiddenClass(bytes, true);
+			return (CompiledNetwork) hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class))
+					.invoke();
+		} catch (Throwable t) {
+			//Any problem with the generated class leaves the network interpreted
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the class file of a single network. Constants are added to the pool while the code is written.
+	 */
+	private static final class ClassWriter {
+
+		private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+		private final DataOutputStream poolOut = new DataOutputStream(pool);
+		private final HashMap<Object, Integer> entries = new HashMap<>();
+		private int poolCount = 1;
+
+		private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+		/**
+		 * @return The code of the method computing the output, or null if it can not be generated
+		 */
+		byte[] writeCode(int nodeCount, int[] inputIndices, int[] outputIndices, ActivationFunction[] activations,
+				int[] edgeSources, int[] edgeTargets, float[] weights) {
+			int applyActivation = methodRef(ACTIVATION, "applyActivation", "(F)F");
+			for (int i = 0; i < inputIndices.length; i++) {
+				code.write(ALOAD_1);
+				loadOffset(INPUT_OFFSET, i);
+				code.write(FALOAD);
+				storeLocal(FIRST_NODE + inputIndices[i]);
+			}
+			int edgeCount = edgeTargets.length;
+			int e = 0;
+			for (int n = 0; n < nodeCount; n++) {
+				ActivationFunction af = activations[n];
+				if (af == null) {
+					//Input nodes keep their given value
+					while (e < edgeCount && edgeTargets[e] == n) {
+						e++;
+					}
+					continue;
+				}
+				//Linear activation returns its argument, so its call can be left out
+				boolean activate = af != ActivationFunction.LINEAR;
+				if (activate) {
+					writeIndex(GETSTATIC, fieldRef(ACTIVATION, af.name(), "L" + ACTIVATION + ";"));
+				}
+				code.write(FCONST_0);
+				for (; e < edgeCount && edgeTargets[e] == n; e++) {
+					int source = edgeSources[e];
+					//A source that comes later belongs to a loop, whose values the interpreter takes from the last call
+					if (source >= n && activations[source] != null)
+						return null;
+					loadLocal(FIRST_NODE + source);
+					loadConstant(weights[e]);
+					code.write(FMUL);
+					code.write(FADD);
+				}
+				if (activate) {
+					writeIndex(INVOKEVIRTUAL, applyActivation);
+				}
+				storeLocal(FIRST_NODE + n);
+				if (code.size() > MAX_CODE_LENGTH || poolCount > MAX_CODE_LENGTH)
+					return null;
+			}
+			for (int i = 0; i < outputIndices.length; i++) {
+				code.write(ALOAD_3);
+				loadOffset(OUTPUT_OFFSET, i);
+				loadLocal(FIRST_NODE + outputIndices[i]);
+				code.write(FASTORE);
+			}
+			code.write(RETURN);
+			return code.size() > MAX_CODE_LENGTH ? null : code.toByteArray();
+		}
+
+		/**
+		 * Pushes the value of an int parameter plus a constant
+		 */
+		private void loadOffset(int local, int add) {
+			if (local == INPUT_OFFSET) {
+				code.write(ILOAD_2);
+			} else {
+				code.write(ILOAD);
+				code.write(local);
+			}
+			if (add > 0) {
+				pushInt(add);
+				code.write(IADD);
+			}
+		}
+
+		private void pushInt(int value) {
+			if (value <= 5) {
+				code.write(ICONST_0 + value);
+			} else if (value < 128) {
+				code.write(BIPUSH);
+				code.write(value);
+			} else {
+				code.write(SIPUSH);
+				code.write(value >>> 8);
+				code.write(value);
+			}
+		}
+
+		private void loadConstant(float value) {
+			int index = floatConstant(value);
+			if (index < 256) {
+				code.write(LDC);
+				code.write(index);
+			} else {
+				writeIndex(LDC_W, index);
+			}
+		}
+
+		private void loadLocal(int local) {
+			writeLocal(FLOAD, FLOAD_0, local);
+		}
+
+		private void storeLocal(int local) {
+			writeLocal(FSTORE, FSTORE_0, local);
+		}
+
+		private void writeLocal(int opcode, int shortOpcode, int local) {
+			if (local <= 3) {
+				code.write(shortOpcode + local);
+			} else if (local < 256) {
+				code.write(opcode);
+				code.write(local);
+			} else {
+				code.write(WIDE);
+				code.write(opcode);
+				code.write(local >>> 8);
+				code.write(local);
+			}
+		}
+
+		private void writeIndex(int opcode, int index) {
+			code.write(opcode);
+			code.write(index >>> 8);
+			code.write(index);
+		}
+
+		/**
+		 * Writes the whole class: a final class implementing {@link CompiledNetwork} with a public constructor and the
+		 * given code as the body of its only method
+		 */
+		byte[] toByteArray(byte[] computeCode, int maxLocals) {
+			int thisClass = classRef(NAME);
+			int superClass = classRef("java/lang/Object");
+			int networkInterface = classRef(CompiledNetwork.class.getName().replace('.', '/'));
+			int superInit = methodRef("java/lang/Object", "<init>", "()V");
+			int init = utf8("<init>");
+			int initType = utf8("()V");
+			int compute = utf8("computeOutput");
+			int computeType = utf8("([FI[FI)V");
+			int codeName = utf8("Code");
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(pool.size() + computeCode.length + 128);
+			DataOutputStream out = new DataOutputStream(bytes);
+			try {
+				out.writeInt(0xCAFEBABE);
+				out.writeShort(0);
+				out.writeShort(61);
+				out.writeShort(poolCount);
+				pool.writeTo(out);
+				out.writeShort(0x0010 | 0x0020); //final, super
+				out.writeShort(thisClass);
+				out.writeShort(superClass);
+				out.writeShort(1);
+				out.writeShort(networkInterface);
+				out.writeShort(0); //fields
+				out.writeShort(2); //methods
+
+				byte[] initCode = { (byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (superInit >>> 8), (byte) superInit,
+						(byte) RETURN };
+				writeMethod(out, init, initType, codeName, 1, 1, initCode);
+				//The deepest stack holds the activation function, the sum, a node value and a weight
+				writeMethod(out, compute, computeType, codeName, 4, maxLocals, computeCode);
+
+				out.writeShort(0); //attributes
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return bytes.toByteArray();
+		}
+
+		private static void writeMethod(DataOutputStream out, int name, int type, int codeName, int maxStack,
+				int maxLocals, byte[] code) throws IOException {
+			out.writeShort(0x0001); //public
+			out.writeShort(name);
+			out.writeShort(type);
+			out.writeShort(1);
+			out.writeShort(codeName);
+			out.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+			out.writeShort(maxStack);
+			out.writeShort(maxLocals);
+			out.writeInt(code.length);
+			out.write(code);
+			out.writeShort(0); //exception table
+			out.writeShort(0); //attributes
+		}
+
+		private int utf8(String value) {
+			return entry("U" + value, () -> {
+				poolOut.writeByte(1);
+				poolOut.writeUTF(value);
+			});
+		}
+
+		private int classRef(String name) {
+			int nameIndex = utf8(name);
+			return entry("C" + name, () -> {
+				poolOut.writeByte(7);
+				poolOut.writeShort(nameIndex);
+			});
+		}
+
+		private int floatConstant(float value) {
+			//Keyed by the bits, so 0 and -0 are different constants
+			return entry(Float.floatToRawIntBits(value), () -> {
+				poolOut.writeByte(4);
+				poolOut.writeFloat(value);
+			});
+		}
+
+		private int nameAndType(String name, String type) {
+			int nameIndex = utf8(name);
+			int typeIndex = utf8(type);
+			return entry("N" + name + ":" + type, () -> {
+				poolOut.writeByte(12);
+				poolOut.writeShort(nameIndex);
+				poolOut.writeShort(typeIndex);
+			});
+		}
+
+		private int fieldRef(String owner, String name, String type) {
+			return memberRef(9, owner, name, type);
+		}
+
+		private int methodRef(String owner, String name, String type) {
+			return memberRef(10, owner, name, type);
+		}
+
+		private int memberRef(int tag, String owner, String name, String type) {
+			int classIndex = classRef(owner);
+			int nameAndType = nameAndType(name, type);
+			return entry("M" + tag + owner + "." + name + ":" + type, () -> {
+				poolOut.writeByte(tag);
+				poolOut.writeShort(classIndex);
+				poolOut.writeShort(nameAndType);
+			});
+		}
+
+		private int entry(Object key, PoolWriter writer) {
+			Integer index = entries.get(key);
+			if (index == null) {
+				try {
+					writer.write();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				index = poolCount++;
+				entries.put(key, index);
+			}
+			return index;
+		}
+
+		private interface PoolWriter {
+			void write() throws IOException;
+		}
+
+	}
+
+}
@@ -23,6 +23,17 @@ public class NodeGene {
 		this.layer = layer;
 	}
 	
+	/**
+	 * Constructor used for restoring a node with a known innovation number
+	 * 
+	 * @param innovationNumber The innovation number of the node
+	 * @param layer The layer of the node
+	 */
+	NodeGene(int innovationNumber, Layer layer) {
+		this.innovationNumber = innovationNumber;
+		this.layer = layer;
+	}
+	
 	public int getInnovationNumber() {
 		return innovationNumber;
 	}
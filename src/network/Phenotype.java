@@ -0,0 +1,634 @@
+package network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import data.ActivationFunction;
+import network.NodeGene.Layer;
+
+/**
+ * A compiled, flat representation of the network described by a {@link Genome}. The nodes are sorted topologically
+ * once and all {@link ConnectionGene}s are stored as primitive arrays sorted by their target node, so that evaluating
+ * the network is a single pass without any lookups or allocations. A phenotype is immutable apart from its weights,
+ * the node values computed during evaluation are kept in a buffer per thread so it can be evaluated concurrently.
+ * <p>
+ * Only the part of the network that can change the outputs is compiled: disabled connections are dropped, as are hidden
+ * nodes that no input reaches or that reach no output, together with their connections. Pruning never changes the
+ * outputs, a hidden node that no input reaches is only dropped if its activation function maps 0 to 0.
+ * <p>
+ * Evaluation is tiered: a phenotype is interpreted until it has been evaluated more often than the compile threshold of
+ * its {@link Core}, after which the {@link NetworkCompiler} generates code for it. Networks with loops or too many
+ * connections stay interpreted, as do phenotypes whose weights change, until they pass the threshold again.
+ *
+ * @author Siemen Geurts, Thomas van den Broek
+ *
+ */
+public class Phenotype {
+
+	/**
+	 * Number of samples evaluated together by {@link #computeOutputs}, chosen so the values of a block stay in cache
+	 */
+	public static final int BATCH_BLOCK = 256;
+
+	private static final ThreadLocal<float[]> buffers = ThreadLocal.withInitial(() -> new float[0]);
+
+	private final int nodeCount;
+	private final int[] inputIndices;
+	private final int[] outputIndices;
+	private final ActivationFunction[] activations;
+
+	private final int[] edgeSources;
+	private final int[] edgeTargets;
+	private final int[] edgeGenes;
+	private final float[] weights;
+
+	private final BatchKernel kernel;
+
+	private final int geneCount;
+	private final int disabledCount;
+	private final int prunedNodeCount;
+
+	private final int compileThreshold;
+	private final int maxCompiledConnections;
+	/** Counts evaluations until the network is compiled, updates from concurrent evaluations may get lost */
+	private int evaluations;
+	private volatile CompiledNetwork compiled;
+	private boolean compileFailed;
+
+	/**
+	 * Compiles the network of the given genome
+	 *
+	 * @param genome The genome to be compiled
+	 * @return The compiled network
+	 */
+	static Phenotype compile(Genome genome) {
+		ArrayList<ConnectionGene> connections = genome.getConnections();
+		int size = connections.size();
+		int[] geneInputs = new int[size];
+		int[] geneOutputs = new int[size];
+		boolean[] geneActive = new boolean[size];
+		for (int i = 0; i < size; i++) {
+			geneInputs[i] = connections.get(i).getInput().getInnovationNumber();
+			geneOutputs[i] = connections.get(i).getOutput().getInnovationNumber();
+			geneActive[i] = connections.get(i).isActive();
+		}
+		Phenotype phenotype = new Phenotype(genome.getCore(), size, geneInputs, geneOutputs, geneActive,
+				genome.getTopologicalOrder().getOrder());
+		phenotype.updateWeights(connections);
+		return phenotype;
+	}
+
+	/**
+	 * Compiles the network of the given compact genome
+	 *
+	 * @param genome The genome to be compiled
+	 * @return The compiled network
+	 */
+	static Phenotype compile(CompactGenome genome) {
+		Phenotype phenotype = new Phenotype(genome.getCore(), genome.size(), genome.getInputs(), genome.getOutputs(),
+				genome.getEnabled(), null);
+		phenotype.updateWeights(genome.getWeights());
+		return phenotype;
+	}
+
+	/**
+	 * Compiles a network given as a set of genes, each connecting the node with an input innovation number to the node
+	 * with an output innovation number
+	 *
+	 * @param core The core holding all nodes and the activation functions
+	 * @param geneCount The number of genes
+	 * @param geneInputs The innovation number of the input node of each gene
+	 * @param geneOutputs The innovation number of the output node of each gene
+	 * @param geneActive Whether each gene is active
+	 * @param nodeOrder The innovation numbers of the nodes in topological order, or null if they still have to be
+	 *            sorted
+	 */
+	private Phenotype(Core core, int geneCount, int[] geneInputs, int[] geneOutputs, boolean[] geneActive,
+			int[] nodeOrder) {
+		//Collect every node of the network, inputs first so they always get the lowest indices
+		ArrayList<NodeGene> allNodes = new ArrayList<>();
+		HashMap<Integer, Integer> allIndices = new HashMap<>();
+		for (NodeGene ng : core.inputNodes) {
+			addNode(ng, allNodes, allIndices);
+		}
+		for (NodeGene ng : core.outputNodes) {
+			addNode(ng, allNodes, allIndices);
+		}
+		int[] geneSources = new int[geneCount];
+		int[] geneTargets = new int[geneCount];
+		int disabledCount = 0;
+		for (int i = 0; i < geneCount; i++) {
+			geneSources[i] = addNode(core.nodes.get(geneInputs[i]), allNodes, allIndices);
+			geneTargets[i] = addNode(core.nodes.get(geneOutputs[i]), allNodes, allIndices);
+			if (!geneActive[i]) {
+				disabledCount++;
+			}
+		}
+
+		//Keep the connections that can change the outputs and the nodes they connect, inputs and outputs are always
+		//kept and so keep the lowest indices
+		boolean[] keptNodes = new boolean[allNodes.size()];
+		int[] keptGenes = prune(core, allNodes, geneSources, geneTargets, geneActive, keptNodes);
+		ArrayList<NodeGene> nodes = new ArrayList<>();
+		HashMap<Integer, Integer> nodeIndices = new HashMap<>();
+		for (int i = 0; i < keptNodes.length; i++) {
+			if (keptNodes[i]) {
+				addNode(allNodes.get(i), nodes, nodeIndices);
+			}
+		}
+		int nodeCount = nodes.size();
+		int edgeCount = keptGenes.length;
+		int[] sources = new int[edgeCount];
+		int[] targets = new int[edgeCount];
+		for (int i = 0; i < edgeCount; i++) {
+			sources[i] = nodeIndices.get(allNodes.get(geneSources[keptGenes[i]]).getInnovationNumber());
+			targets[i] = nodeIndices.get(allNodes.get(geneTargets[keptGenes[i]]).getInnovationNumber());
+		}
+
+		int[] order = new int[nodeCount];
+		if (nodeOrder == null || !applyOrder(nodeOrder, nodeIndices, order)) {
+			sortTopologically(nodeCount, sources, targets, order);
+		}
+		int[] position = new int[nodeCount];
+		for (int i = 0; i < nodeCount; i++) {
+			position[order[i]] = i;
+		}
+
+		//Store the activation function of each node, input nodes are not activated
+		activations = new ActivationFunction[nodeCount];
+		for (int i = 0; i < nodeCount; i++) {
+			NodeGene ng = nodes.get(order[i]);
+			if (ng.getLayer() == Layer.HIDDEN) {
+				activations[i] = core.activationFunctionHidden;
+			} else if (ng.getLayer() == Layer.OUTPUT) {
+				activations[i] = core.activationFunctionOutput;
+			}
+		}
+
+		inputIndices = new int[core.inputNodes.size()];
+		for (int i = 0; i < inputIndices.length; i++) {
+			inputIndices[i] = position[i];
+		}
+		outputIndices = new int[core.outputNodes.size()];
+		for (int i = 0; i < outputIndices.length; i++) {
+			outputIndices[i] = position[inputIndices.length + i];
+		}
+
+		//Sort the connections by their target's position (counting sort), so each node's inputs are contiguous
+		int[] targetStart = new int[nodeCount + 1];
+		for (int i = 0; i < edgeCount; i++) {
+			targetStart[position[targets[i]] + 1]++;
+		}
+		for (int i = 0; i < nodeCount; i++) {
+			targetStart[i + 1] += targetStart[i];
+		}
+		edgeSources = new int[edgeCount];
+		edgeTargets = new int[edgeCount];
+		edgeGenes = new int[edgeCount];
+		weights = new float[edgeCount];
+		for (int i = 0; i < edgeCount; i++) {
+			int target = position[targets[i]];
+			int e = targetStart[target]++;
+			edgeSources[e] = position[sources[i]];
+			edgeTargets[e] = target;
+			edgeGenes[e] = keptGenes[i];
+		}
+
+		this.nodeCount = nodeCount;
+		this.geneCount = geneCount;
+		this.disabledCount = disabledCount;
+		this.prunedNodeCount = allNodes.size() - nodeCount;
+		this.kernel = core.kernel;
+		this.compileThreshold = core.compileThreshold;
+		this.maxCompiledConnections = core.maxCompiledConnections;
+	}
+
+	/**
+	 * Finds the connections that can change the outputs of the network: active connections from a node that carries a
+	 * signal to a node that reaches an output. Inputs carry a signal, as does every node reached from a node carrying a
+	 * signal. A node whose activation function maps 0 to something else carries a signal as well, since it does so even
+	 * without any input.
+	 *
+	 * @param core The core holding the input and output nodes and the activation functions
+	 * @param nodes Every node of the network
+	 * @param sources The index of the input node of each gene
+	 * @param targets The index of the output node of each gene
+	 * @param active Whether each gene is active
+	 * @param kept The array in which is stored whether each node is kept
+	 * @return The indices of the kept genes in ascending order
+	 */
+	private static int[] prune(Core core, ArrayList<NodeGene> nodes, int[] sources, int[] targets, boolean[] active,
+			boolean[] kept) {
+		int nodeCount = nodes.size();
+		int geneCount = sources.length;
+		//Connections into an input node are never evaluated, inputs keep their given value
+		boolean[] usable = new boolean[geneCount];
+		for (int i = 0; i < geneCount; i++) {
+			usable[i] = active[i] && nodes.get(targets[i]).getLayer() != Layer.INPUT;
+		}
+
+		boolean[] signal = new boolean[nodeCount];
+		for (int n = 0; n < nodeCount; n++) {
+			Layer layer = nodes.get(n).getLayer();
+			signal[n] = layer == Layer.INPUT
+					|| layer == Layer.HIDDEN && core.activationFunctionHidden.applyActivation(0f) != 0f
+					|| layer == Layer.OUTPUT && core.activationFunctionOutput.applyActivation(0f) != 0f;
+		}
+		propagate(signal, sources, targets, usable);
+		boolean[] reaching = new boolean[nodeCount];
+		for (int n = 0; n < nodeCount; n++) {
+			reaching[n] = nodes.get(n).getLayer() == Layer.OUTPUT;
+		}
+		propagate(reaching, targets, sources, usable);
+
+		int[] keptGenes = new int[geneCount];
+		int keptCount = 0;
+		for (int i = 0; i < geneCount; i++) {
+			if (usable[i] && signal[sources[i]] && reaching[targets[i]]) {
+				keptGenes[keptCount++] = i;
+				kept[sources[i]] = true;
+				kept[targets[i]] = true;
+			}
+		}
+		for (int n = 0; n < nodeCount; n++) {
+			kept[n] |= nodes.get(n).getLayer() != Layer.HIDDEN;
+		}
+		return Arrays.copyOf(keptGenes, keptCount);
+	}
+
+	/**
+	 * Marks every node reachable from a marked node over the usable edges, also for networks with loops
+	 *
+	 * @param marked Whether each node is marked, updated in place
+	 * @param from The node each edge starts at
+	 * @param to The node each edge ends at
+	 * @param usable Whether each edge may be followed
+	 */
+	private static void propagate(boolean[] marked, int[] from, int[] to, boolean[] usable) {
+		int nodeCount = marked.length;
+		int edgeCount = from.length;
+		int[] start = new int[nodeCount + 1];
+		for (int i = 0; i < edgeCount; i++) {
+			if (usable[i]) {
+				start[from[i] + 1]++;
+			}
+		}
+		for (int n = 0; n < nodeCount; n++) {
+			start[n + 1] += start[n];
+		}
+		int[] fill = start.clone();
+		int[] next = new int[start[nodeCount]];
+		for (int i = 0; i < edgeCount; i++) {
+			if (usable[i]) {
+				next[fill[from[i]]++] = to[i];
+			}
+		}
+		int[] stack = new int[nodeCount];
+		int top = 0;
+		for (int n = 0; n < nodeCount; n++) {
+			if (marked[n]) {
+				stack[top++] = n;
+			}
+		}
+		while (top > 0) {
+			int n = stack[--top];
+			for (int e = start[n]; e < start[n + 1]; e++) {
+				if (!marked[next[e]]) {
+					marked[next[e]] = true;
+					stack[top++] = next[e];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Uses a topological order maintained by the genome instead of sorting the nodes again
+	 *
+	 * @param nodeOrder The innovation numbers of the nodes in topological order
+	 * @param nodeIndices The index of each node of the network by innovation number
+	 * @param order The array in which the index of the node at each position is stored
+	 * @return Whether every node of the network was part of the given order
+	 */
+	private static boolean applyOrder(int[] nodeOrder, HashMap<Integer, Integer> nodeIndices, int[] order) {
+		int placed = 0;
+		for (int node : nodeOrder) {
+			Integer index = nodeIndices.get(node);
+			if (index != null) {
+				order[placed++] = index;
+			}
+		}
+		return placed == order.length;
+	}
+
+	/**
+	 * Sorts the nodes topologically (Kahn), nodes that are part of a loop are appended at the end
+	 */
+	private static void sortTopologically(int nodeCount, int[] sources, int[] targets, int[] order) {
+		int edgeCount = sources.length;
+		//Build the outgoing adjacency of every node as flat arrays
+		int[] inDegree = new int[nodeCount];
+		int[] outStart = new int[nodeCount + 1];
+		for (int i = 0; i < edgeCount; i++) {
+			inDegree[targets[i]]++;
+			outStart[sources[i] + 1]++;
+		}
+		for (int i = 0; i < nodeCount; i++) {
+			outStart[i + 1] += outStart[i];
+		}
+		int[] outFill = outStart.clone();
+		int[] outTargets = new int[edgeCount];
+		for (int i = 0; i < edgeCount; i++) {
+			outTargets[outFill[sources[i]]++] = targets[i];
+		}
+
+		boolean[] placed = new boolean[nodeCount];
+		int head = 0, tail = 0;
+		for (int i = 0; i < nodeCount; i++) {
+			if (inDegree[i] == 0) {
+				order[tail++] = i;
+				placed[i] = true;
+			}
+		}
+		while (head < tail) {
+			int n = order[head++];
+			for (int e = outStart[n]; e < outStart[n + 1]; e++) {
+				int t = outTargets[e];
+				if (--inDegree[t] == 0 && !placed[t]) {
+					order[tail++] = t;
+					placed[t] = true;
+				}
+			}
+		}
+		for (int i = 0; i < nodeCount && tail < nodeCount; i++) {
+			if (!placed[i]) {
+				order[tail++] = i;
+			}
+		}
+	}
+
+	private static int addNode(NodeGene ng, ArrayList<NodeGene> nodes, HashMap<Integer, Integer> nodeIndices) {
+		Integer index = nodeIndices.get(ng.getInnovationNumber());
+		if (index == null) {
+			index = nodes.size();
+			nodeIndices.put(ng.getInnovationNumber(), index);
+			nodes.add(ng);
+		}
+		return index;
+	}
+
+	/**
+	 * Copies the current weights of the compiled {@link ConnectionGene}s, used when only the weights of the genome
+	 * have changed and the structure is still the same
+	 *
+	 * @param genes The genes this phenotype was compiled from
+	 */
+	public void updateWeights(List<ConnectionGene> genes) {
+		for (int e = 0; e < edgeGenes.length; e++) {
+			weights[e] = genes.get(edgeGenes[e]).getWeight();
+		}
+		discardCompiled();
+	}
+
+	/**
+	 * Copies the current weights of the compiled genes, used when only the weights of the genome have changed and the
+	 * structure is still the same
+	 *
+	 * @param geneWeights The weights of the genes this phenotype was compiled from
+	 */
+	public void updateWeights(float[] geneWeights) {
+		for (int e = 0; e < edgeGenes.length; e++) {
+			weights[e] = geneWeights[edgeGenes[e]];
+		}
+		discardCompiled();
+	}
+
+	/**
+	 * Drops the generated code, whose weights are constants, so the network is interpreted until it is compiled again
+	 */
+	private synchronized void discardCompiled() {
+		compiled = null;
+		compileFailed = false;
+		evaluations = 0;
+	}
+
+	/**
+	 * Counts an evaluation and compiles the network once it passes the compile threshold
+	 *
+	 * @return The compiled network, or null if the network is interpreted
+	 */
+	private CompiledNetwork tier() {
+		CompiledNetwork c = compiled;
+		if (c == null && compileThreshold >= 0 && ++evaluations > compileThreshold) {
+			c = compileNetwork();
+		}
+		return c;
+	}
+
+	/**
+	 * Generates code for this network unless it already has been or failed before
+	 *
+	 * @return The compiled network, or null if the network can not be compiled
+	 */
+	private synchronized CompiledNetwork compileNetwork() {
+		if (compiled == null && !compileFailed) {
+			if (edgeTargets.length <= maxCompiledConnections) {
+				compiled = NetworkCompiler.compile(nodeCount, inputIndices, outputIndices, activations, edgeSources,
+						edgeTargets, weights.clone());
+			}
+			compileFailed = compiled == null;
+		}
+		return compiled;
+	}
+
+	/**
+	 * Generates code for this network now instead of after the compile threshold, for a network that is known to be
+	 * evaluated often such as the final champion of a run
+	 *
+	 * @return Whether the network is compiled, networks with loops or too many connections can not be
+	 */
+	public boolean generateCode() {
+		return compileNetwork() != null;
+	}
+
+	/**
+	 * @return Whether this network is evaluated by generated code
+	 */
+	public boolean isCompiled() {
+		return compiled != null;
+	}
+
+	/**
+	 * Computes the output of the network for a given input
+	 *
+	 * @param input The values to be used in the input layer
+	 * @return The values of the output layer
+	 */
+	public float[] computeOutput(float[] input) {
+		float[] output = new float[outputIndices.length];
+		computeOutput(input, output);
+		return output;
+	}
+
+	/**
+	 * Computes the output of the network for a given input without allocating
+	 *
+	 * @param input The values to be used in the input layer
+	 * @param output The array in which the values of the output layer are stored
+	 */
+	public void computeOutput(float[] input, float[] output) {
+		CompiledNetwork c = tier();
+		if (c != null && input.length >= inputIndices.length) {
+			c.computeOutput(input, 0, output, 0);
+			return;
+		}
+		float[] values = buffers.get();
+		if (values.length < nodeCount) {
+			buffers.set(values = new float[nodeCount]);
+		}
+		for (int i = 0; i < inputIndices.length; i++) {
+			values[inputIndices[i]] = i < input.length ? input[i] : 0;
+		}
+		int e = 0;
+		int edgeCount = edgeTargets.length;
+		for (int n = 0; n < nodeCount; n++) {
+			if (activations[n] == null) {
+				//Input nodes keep their given value
+				while (e < edgeCount && edgeTargets[e] == n) {
+					e++;
+				}
+				continue;
+			}
+			float sum = 0f;
+			while (e < edgeCount && edgeTargets[e] == n) {
+				sum += values[edgeSources[e]] * weights[e];
+				e++;
+			}
+			values[n] = activations[n].applyActivation(sum);
+		}
+		for (int i = 0; i < outputIndices.length; i++) {
+			output[i] = values[outputIndices[i]];
+		}
+	}
+
+	/**
+	 * Computes the output of the network for a batch of inputs. Instead of evaluating the network once per sample, every
+	 * connection is applied to a whole block of samples at once.
+	 *
+	 * @param inputs The input values of all samples in row-major order, each row holding one sample
+	 * @param samples The number of samples in the batch
+	 * @return The output values of all samples in row-major order
+	 */
+	public float[] computeOutputs(float[] inputs, int samples) {
+		float[] outputs = new float[samples * outputIndices.length];
+		computeOutputs(inputs, samples, outputs);
+		return outputs;
+	}
+
+	/**
+	 * Computes the output of the network for a batch of inputs without allocating
+	 *
+	 * @param inputs The input values of all samples in row-major order, each row holding one sample
+	 * @param samples The number of samples in the batch
+	 * @param outputs The array in which the output values of all samples are stored in row-major order
+	 */
+	public void computeOutputs(float[] inputs, int samples, float[] outputs) {
+		if (samples == 0)
+			return;
+		int inputWidth = inputs.length / samples;
+		int outputWidth = outputIndices.length;
+		CompiledNetwork c = tier();
+		if (c != null && inputWidth >= inputIndices.length) {
+			for (int s = 0; s < samples; s++) {
+				c.computeOutput(inputs, s * inputWidth, outputs, s * outputWidth);
+			}
+			return;
+		}
+		int block = Math.min(samples, BATCH_BLOCK);
+		//Node values are stored node-major, each node holds a contiguous row with one value per sample of the block
+		float[] values = buffers.get();
+		if (values.length < nodeCount * block) {
+			buffers.set(values = new float[nodeCount * block]);
+		}
+		int edgeCount = edgeTargets.length;
+		for (int first = 0; first < samples; first += block) {
+			int count = Math.min(block, samples - first);
+			for (int i = 0; i < inputIndices.length; i++) {
+				int row = inputIndices[i] * block;
+				for (int s = 0; s < count; s++) {
+					values[row + s] = i < inputWidth ? inputs[(first + s) * inputWidth + i] : 0;
+				}
+			}
+			int e = 0;
+			for (int n = 0; n < nodeCount; n++) {
+				if (activations[n] == null) {
+					while (e < edgeCount && edgeTargets[e] == n) {
+						e++;
+					}
+					continue;
+				}
+				int row = n * block;
+				for (int s = 0; s < count; s++) {
+					values[row + s] = 0f;
+				}
+				while (e < edgeCount && edgeTargets[e] == n) {
+					kernel.accumulate(values, row, edgeSources[e] * block, weights[e], count);
+					e++;
+				}
+				kernel.activate(activations[n], values, row, count);
+			}
+			for (int i = 0; i < outputWidth; i++) {
+				int row = outputIndices[i] * block;
+				for (int s = 0; s < count; s++) {
+					outputs[(first + s) * outputWidth + i] = values[row + s];
+				}
+			}
+		}
+	}
+
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	public int getConnectionCount() {
+		return edgeTargets.length;
+	}
+
+	/**
+	 * @return The number of genes this phenotype was compiled from, including the pruned ones
+	 */
+	public int getGeneCount() {
+		return geneCount;
+	}
+
+	/**
+	 * @return The number of genes left out of this phenotype, because they are disabled or cannot change the outputs
+	 */
+	public int getPrunedConnectionCount() {
+		return geneCount - edgeTargets.length;
+	}
+
+	/**
+	 * @return The number of pruned genes that are disabled, the others are enabled but cannot change the outputs
+	 */
+	public int getDisabledConnectionCount() {
+		return disabledCount;
+	}
+
+	/**
+	 * @return The number of hidden nodes of the genome left out of this phenotype
+	 */
+	public int getPrunedNodeCount() {
+		return prunedNodeCount;
+	}
+
+	public int getNumInputs() {
+		return inputIndices.length;
+	}
+
+	public int getNumOutputs() {
+		return outputIndices.length;
+	}
+
+}
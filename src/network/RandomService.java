@@ -0,0 +1,72 @@
+package network;
+
+import java.util.SplittableRandom;
+
+/**
+ * Source of all randomness of a run. Every generation gets its own stream derived from the seed of the run and the
+ * number of the generation, so a run can be reproduced exactly, also when it is resumed halfway. Work that is done in
+ * parallel, like mutating or breeding genomes, uses streams split off the generation's stream in a fixed order, so the
+ * result does not depend on how the work is scheduled and no stream is shared between threads.
+ *
+ * @author Siemen Geurts, Thomas van den Broek
+ *
+ */
+public class RandomService {
+
+	private final long seed;
+	private SplittableRandom random;
+
+	/**
+	 * @param seed The seed of the run
+	 */
+	public RandomService(long seed) {
+		this.seed = seed;
+		this.random = new SplittableRandom(seed);
+	}
+
+	/**
+	 * Starts the stream of a generation, called once at the start of every generation
+	 *
+	 * @param generation The number of the generation
+	 */
+	public void startGeneration(int generation) {
+		random = new SplittableRandom(mix(seed, generation));
+	}
+
+	/**
+	 * Returns the stream of the current generation, which may only be used by a single thread at a time. Parallel work
+	 * should use {@link #split()} for each task instead.
+	 *
+	 * @return The stream of the current generation
+	 */
+	public SplittableRandom get() {
+		return random;
+	}
+
+	/**
+	 * Splits an independent stream off the stream of the current generation, for instance for a single genome or worker
+	 *
+	 * @return The new stream
+	 */
+	public SplittableRandom split() {
+		return random.split();
+	}
+
+	/**
+	 * @return The seed of the run
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Combines a seed with a number into a new, well distributed seed using the finalizer of SplitMix64
+	 */
+	static long mix(long seed, long value) {
+		long z = seed + (value + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+}
@@ -0,0 +1,29 @@
+package network;
+
+import data.ActivationFunction;
+
+/**
+ * {@link BatchKernel} using plain loops, which the JIT is free to auto-vectorize
+ * 
+ * @author Siemen Geurts, Thomas van den Broek
+ *
+ */
+public class ScalarKernel implements BatchKernel {
+
+	@Override
+	public void accumulate(float[] values, int target, int source, float weight, int count) {
+		for (int s = 0; s < count; s++) {
+			values[target + s] += values[source + s] * weight;
+		}
+	}
+
+	@Override
+	public void activate(ActivationFunction af, float[] values, int offset, int count) {
+		if (af == ActivationFunction.LINEAR)
+			return;
+		for (int s = offset; s < offset + count; s++) {
+			values[s] = af.applyActivation(values[s]);
+		}
+	}
+
+}
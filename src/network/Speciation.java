@@ -1,116 +1,117 @@
 package network;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.stream.Collectors;
-
-import data.Constants;
+import java.util.Iterator;
 
+/**
+ * Divides the genomes of a {@link Core} into {@link Species}. The species and their representatives are kept across
+ * generations, each genome joins the closest species whose representative is within the compatibility threshold. A
+ * genome that is not close to any of the existing species joins the closest species founded during this generation,
+ * or founds a new species if there is none. Optionally the threshold is adjusted every generation to reach a target
+ * number of species. Distances are computed in parallel by a {@link DistanceService}, which also caches them.
+ * 
+ * @author Siemen Geurts, Thomas van den Broek
+ *
+ */
 public class Speciation {
 
-	public static final float range = 15f;
+	public static final float DEFAULT_THRESHOLD = 3f;
+	public static final float DEFAULT_THRESHOLD_STEP = 0.3f;
+	public static final float MIN_THRESHOLD = 0.3f;
+	
 	private Core core;
-	HashMap<Genome, Float> locations;
-	HashMap<Genome, Float> closestCenterDistances;
+	private DistanceService distanceService = new DistanceService();
+	private float threshold = DEFAULT_THRESHOLD;
+	private float thresholdStep = DEFAULT_THRESHOLD_STEP;
+	private int targetSpeciesCount;
 	
 	public Speciation(Core core) {
 		this.core = core;
-		locations = new HashMap<>();
-		closestCenterDistances = new HashMap<>();
-		localize();
-		int k = 1;
-		while (!kMeans(kMeansPP(k))) {		
-			k++;
-		}
 	}
 	
-	private void localize() {
+	/**
+	 * Assigns every genome of the core to a species, creating new species where needed. Species that did not receive
+	 * any genome are removed and every remaining species picks a new representative from its members.
+	 */
+	public void speciate() {
+		ArrayList<Species> species = core.species;
 		ArrayList<Genome> genomes = core.getGenomes();
-		Genome g = genomes.get(0);
-		Genome maxG = genomes.get(0);
-		float max = 0;
-		for (Genome g2 : genomes) {
-			if (g != g2) {
-				float dist = g.computeDistance(g2);
-				if (dist > max) {
-					maxG = g2;
-					max = dist;
-				}
+		ArrayList<Genome> representatives = new ArrayList<>();
+		for (Species s : species) {
+			s.clearGenomes();
+			representatives.add(s.getLeaderGenome());
+		}
+		//Compare all genomes with the existing representatives in parallel
+		int[] closest = distanceService.findClosest(genomes, representatives, threshold);
+		int existingCount = species.size();
+		ArrayList<Genome> newRepresentatives = new ArrayList<>();
+		for (int i = 0; i < genomes.size(); i++) {
+			Genome g = genomes.get(i);
+			if (closest[i] >= 0) {
+				species.get(closest[i]).addGenome(g);
+				continue;
+			}
+			//Genomes without a matching species are compared with the species founded during this generation
+			int closestNew = distanceService.findClosest(g, newRepresentatives, threshold);
+			if (closestNew < 0) {
+				species.add(new Species(g));
+				newRepresentatives.add(g);
+			} else {
+				species.get(existingCount + closestNew).addGenome(g);
 			}
 		}
-		locations.put(maxG, 0f);
-		for (Genome g2 : genomes) {
-			if (maxG != g2) {
-				float dist = g.computeDistance(g2);
-				locations.put(g2, dist);
+		ArrayList<Genome> leaders = new ArrayList<>();
+		for (Iterator<Species> iterator = species.iterator(); iterator.hasNext();) {
+			Species s = iterator.next();
+			if (s.getGenomes().isEmpty()) {
+				iterator.remove();
+			} else {
+				leaders.add(s.setRandomLeader(core.getRandom().get()));
 			}
 		}
+		distanceService.finishGeneration(genomes, leaders);
+		adjustThreshold();
 	}
 	
-	private float distance(Genome g1, Genome g2) {
-		return (float)Math.abs(locations.get(g1) - locations.get(g2));
+	private void adjustThreshold() {
+		if (targetSpeciesCount <= 0)
+			return;
+		if (core.species.size() < targetSpeciesCount) {
+			threshold = Math.max(MIN_THRESHOLD, threshold - thresholdStep);
+		} else if (core.species.size() > targetSpeciesCount) {
+			threshold += thresholdStep;
+		}
 	}
 	
-	private ArrayList<Genome> kMeansPP(int k) {
-		ArrayList<Genome> centers = new ArrayList<>();
-		Genome randCenter = core.getGenomes().get(Constants.rand.nextInt(core.getGenomes().size()));
-		Genome closestCenter = randCenter;
-		for (int currK = 0; currK < k; currK++) {
-			float rand = Constants.rand.nextFloat();
-			float probSum = 0;
-			float cumSum = 0;
-			for (Genome g : core.getGenomes()) {
-				float minDist = Float.MAX_VALUE;
-				for (Genome center : centers) {
-					float dist = distance(g, center);
-					if (dist < minDist) {
-						closestCenter = center;
-						minDist = dist;
-					}
-				}
-				closestCenterDistances.put(g, minDist);
-				float dist = distance(g, closestCenter);
-				cumSum += dist * dist;
-			}
-			for (Genome g : core.getGenomes()) {
-				float dist = closestCenterDistances.get(g);
-				probSum += (dist * dist) / cumSum;
-				if (probSum >= rand) {
-					centers.add(g);
-					break;
-				}
-			}
-		}
-		return centers;
+	public DistanceService getDistanceService() {
+		return distanceService;
 	}
 	
-	private boolean kMeans(ArrayList<Genome> centers) {
-		ArrayList<Species> species = new ArrayList<>();
-		for (Genome c : centers) {
-			species.add(new Species(c));
-		}
-		for(Genome g : core.getGenomes().stream().filter(g2 -> !centers.contains(g2)).collect(Collectors.toList())) {
-			float closestDist = Float.MAX_VALUE;
-			Genome closestCenter = centers.get(0);
-			for(Genome center : centers) {
-				float dist = distance(closestCenter, g);
-				if(dist < closestDist) {
-					closestCenter = center;
-					closestDist = dist;
-				}
-			}
-			if(closestDist > range) {
-				return false;
-			}
-			for (Species s : species) {
-				if (s.getLeaderGenome() == closestCenter) {
-					s.addGenome(g);
-					break;
-				}
-			}
-		}
-		core.species = species;
-		return true;
+	public float getThreshold() {
+		return threshold;
+	}
+	
+	public void setThreshold(float threshold) {
+		this.threshold = threshold;
+	}
+	
+	public float getThresholdStep() {
+		return thresholdStep;
+	}
+	
+	public void setThresholdStep(float thresholdStep) {
+		this.thresholdStep = thresholdStep;
+	}
+	
+	public int getTargetSpeciesCount() {
+		return targetSpeciesCount;
+	}
+	
+	/**
+	 * @param targetSpeciesCount The number of species the threshold is adjusted towards, or 0 to keep it fixed
+	 */
+	public void setTargetSpeciesCount(int targetSpeciesCount) {
+		this.targetSpeciesCount = targetSpeciesCount;
 	}
 	
 }
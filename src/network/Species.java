@@ -1,8 +1,10 @@
 package network;
 
 import java.util.ArrayList;
-
-import data.Constants;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
 
 public class Species {
 
@@ -19,26 +21,53 @@ public class Species {
 		genomes.add(genome);
 	}
 	
-	public boolean kill(Genome g) {
-		g.getCore().genomes.remove(g);
-		if (g.equals(leaderGenome)) {
-			setRandomLeader();
+	/**
+	 * Removes all genomes from this species, the leader is kept as representative for the next speciation
+	 */
+	public void clearGenomes() {
+		genomes.clear();
+	}
+	
+	/**
+	 * Removes all genomes that did not survive in a single pass. A new leader is chosen if the leader was removed.
+	 * 
+	 * @param survivors The genomes that survived
+	 * @param random The random stream of the current generation
+	 * @return Whether any genome was removed
+	 */
+	public boolean retain(Set<Genome> survivors, SplittableRandom random) {
+		boolean removed = genomes.removeIf(g -> !survivors.contains(g));
+		if (!survivors.contains(leaderGenome) && !genomes.isEmpty()) {
+			setRandomLeader(random);
 		}
-		return genomes.remove(g);
+		return removed;
 	}
 	
-	public ArrayList<Genome> killRandom(float fraction) {
+	/**
+	 * Removes a random part of the genomes of this species, the genomes are not removed from the {@link Core}
+	 * 
+	 * @param fraction The fraction of genomes that should be kept
+	 * @param random The random stream of the current generation
+	 * @return The removed genomes
+	 */
+	public ArrayList<Genome> killRandom(float fraction, SplittableRandom random) {
 		int countToRemove = (int)(genomes.size() * (1 - fraction));
-		int size = genomes.size();
-		ArrayList<Genome> removed = new ArrayList<>();
-		while (genomes.size() > size - countToRemove) {
-			removed.add(genomes.remove(Constants.rand.nextInt(genomes.size())));
+		//Move the removed genomes to the end one by one, then cut them off at once
+		for (int i = 0; i < countToRemove; i++) {
+			int last = genomes.size() - 1 - i;
+			Collections.swap(genomes, random.nextInt(last + 1), last);
+		}
+		List<Genome> tail = genomes.subList(genomes.size() - countToRemove, genomes.size());
+		ArrayList<Genome> removed = new ArrayList<>(tail);
+		tail.clear();
+		if (!genomes.isEmpty() && removed.contains(leaderGenome)) {
+			setRandomLeader(random);
 		}
 		return removed;
 	}
 	
-	public Genome setRandomLeader() {
-		return leaderGenome = genomes.get(Constants.rand.nextInt(genomes.size()));
+	public Genome setRandomLeader(SplittableRandom random) {
+		return leaderGenome = genomes.get(random.nextInt(genomes.size()));
 	}
 	
 	public ArrayList<Genome> getGenomes() {
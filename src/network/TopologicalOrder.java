@@ -0,0 +1,263 @@
+package network;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Maintains a topological order of the {@link NodeGene}s of a genome while {@link ConnectionGene}s are added, using the
+ * dynamic topological sort of Pearce and Kelly. Adding a connection that agrees with the current order costs nothing,
+ * otherwise only the nodes between both ends of the connection are searched and reordered. This makes checking whether
+ * a new connection would create a loop nearly constant in practice, and the order can be used directly for evaluation.
+ *
+ * @author Siemen Geurts, Thomas van den Broek
+ *
+ */
+public class TopologicalOrder {
+
+	private static final int INITIAL_CAPACITY = 8;
+
+	/** Maps the innovation number of a node to its local index */
+	private HashMap<Integer, Integer> indices = new HashMap<>();
+	private int size;
+	/** The innovation number of each local index */
+	private int[] nodes = new int[INITIAL_CAPACITY];
+	/** The position in the order of each local index */
+	private int[] ord = new int[INITIAL_CAPACITY];
+	/** The local index at each position in the order */
+	private int[] nodeAt = new int[INITIAL_CAPACITY];
+	private int[][] outgoing = new int[INITIAL_CAPACITY][];
+	private int[][] incoming = new int[INITIAL_CAPACITY][];
+	private int[] outCount = new int[INITIAL_CAPACITY];
+	private int[] inCount = new int[INITIAL_CAPACITY];
+
+	//Scratch space for the searches
+	private boolean[] visited = new boolean[INITIAL_CAPACITY];
+	private int[] stack = new int[INITIAL_CAPACITY];
+	private int[] forward = new int[INITIAL_CAPACITY];
+	private int[] backward = new int[INITIAL_CAPACITY];
+	private int forwardCount, backwardCount;
+
+	/**
+	 * Adds a node without any connections at the end of the order, if it is not part of it yet
+	 *
+	 * @param node The innovation number of the node
+	 */
+	public void addNode(int node) {
+		index(node);
+	}
+
+	/**
+	 * @param node The innovation number of a node
+	 * @return Whether the node is part of this order
+	 */
+	public boolean contains(int node) {
+		return indices.containsKey(node);
+	}
+
+	private int index(int node) {
+		Integer index = indices.get(node);
+		if (index != null)
+			return index;
+		if (size == nodes.length) {
+			grow();
+		}
+		int i = size++;
+		indices.put(node, i);
+		nodes[i] = node;
+		ord[i] = i;
+		nodeAt[i] = i;
+		outgoing[i] = new int[2];
+		incoming[i] = new int[2];
+		return i;
+	}
+
+	private void grow() {
+		int capacity = nodes.length * 2;
+		nodes = Arrays.copyOf(nodes, capacity);
+		ord = Arrays.copyOf(ord, capacity);
+		nodeAt = Arrays.copyOf(nodeAt, capacity);
+		outgoing = Arrays.copyOf(outgoing, capacity);
+		incoming = Arrays.copyOf(incoming, capacity);
+		outCount = Arrays.copyOf(outCount, capacity);
+		inCount = Arrays.copyOf(inCount, capacity);
+		visited = new boolean[capacity];
+		stack = new int[capacity];
+		forward = new int[capacity];
+		backward = new int[capacity];
+	}
+
+	/**
+	 * Checks whether adding a connection would create a loop
+	 *
+	 * @param from The innovation number of the input node of the connection
+	 * @param to The innovation number of the output node of the connection
+	 * @return Whether there already is a path from the output node to the input node
+	 */
+	public boolean createsCycle(int from, int to) {
+		if (from == to)
+			return true;
+		Integer f = indices.get(from);
+		Integer t = indices.get(to);
+		if (f == null || t == null)
+			return false;
+		if (ord[t] > ord[f])
+			return false;
+		backwardCount = 0;
+		boolean found = searchForward(t, ord[f], f);
+		clearVisited();
+		return found;
+	}
+
+	/**
+	 * Adds a connection, reordering the nodes between both ends if the connection disagrees with the current order
+	 *
+	 * @param from The innovation number of the input node of the connection
+	 * @param to The innovation number of the output node of the connection
+	 * @throws IllegalArgumentException If the connection would create a loop
+	 */
+	public void addEdge(int from, int to) {
+		if (from == to)
+			throw new IllegalArgumentException("Connection from node " + from + " to itself creates a loop");
+		int f = index(from);
+		int t = index(to);
+		int lowerBound = ord[t];
+		int upperBound = ord[f];
+		if (lowerBound < upperBound) {
+			boolean cycle = searchForward(t, upperBound, f);
+			if (cycle) {
+				clearVisited();
+				throw new IllegalArgumentException("Connection from node " + from + " to " + to + " creates a loop");
+			}
+			searchBackward(f, lowerBound);
+			clearVisited();
+			reorder();
+			backwardCount = 0;
+		}
+		outgoing[f] = append(outgoing[f], outCount[f]++, t);
+		incoming[t] = append(incoming[t], inCount[t]++, f);
+	}
+
+	private static int[] append(int[] array, int index, int value) {
+		if (index == array.length) {
+			array = Arrays.copyOf(array, array.length * 2);
+		}
+		array[index] = value;
+		return array;
+	}
+
+	/**
+	 * Collects all nodes reachable from start that are positioned before the upper bound
+	 *
+	 * @return Whether the target node was reached
+	 */
+	private boolean searchForward(int start, int upperBound, int target) {
+		forwardCount = 0;
+		int top = 0;
+		stack[top++] = start;
+		visited[start] = true;
+		forward[forwardCount++] = start;
+		while (top > 0) {
+			int n = stack[--top];
+			for (int e = 0; e < outCount[n]; e++) {
+				int next = outgoing[n][e];
+				if (next == target)
+					return true;
+				if (!visited[next] && ord[next] < upperBound) {
+					visited[next] = true;
+					forward[forwardCount++] = next;
+					stack[top++] = next;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Collects all nodes from which start is reachable that are positioned after the lower bound
+	 */
+	private void searchBackward(int start, int lowerBound) {
+		backwardCount = 0;
+		int top = 0;
+		stack[top++] = start;
+		visited[start] = true;
+		backward[backwardCount++] = start;
+		while (top > 0) {
+			int n = stack[--top];
+			for (int e = 0; e < inCount[n]; e++) {
+				int next = incoming[n][e];
+				if (!visited[next] && ord[next] > lowerBound) {
+					visited[next] = true;
+					backward[backwardCount++] = next;
+					stack[top++] = next;
+				}
+			}
+		}
+	}
+
+	private void clearVisited() {
+		for (int i = 0; i < forwardCount; i++) {
+			visited[forward[i]] = false;
+		}
+		for (int i = 0; i < backwardCount; i++) {
+			visited[backward[i]] = false;
+		}
+	}
+
+	/**
+	 * Moves all nodes found by the backward search before all nodes found by the forward search, reusing their
+	 * positions
+	 */
+	private void reorder() {
+		long[] sortedBackward = sortByOrd(backward, backwardCount);
+		long[] sortedForward = sortByOrd(forward, forwardCount);
+		int[] positions = new int[backwardCount + forwardCount];
+		int p = 0;
+		for (long l : sortedBackward) {
+			positions[p++] = (int) (l >>> 32);
+		}
+		for (long l : sortedForward) {
+			positions[p++] = (int) (l >>> 32);
+		}
+		Arrays.sort(positions);
+		p = 0;
+		for (long l : sortedBackward) {
+			place((int) l, positions[p++]);
+		}
+		for (long l : sortedForward) {
+			place((int) l, positions[p++]);
+		}
+	}
+
+	private long[] sortByOrd(int[] indices, int count) {
+		long[] sorted = new long[count];
+		for (int i = 0; i < count; i++) {
+			sorted[i] = (long) ord[indices[i]] << 32 | indices[i];
+		}
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	private void place(int index, int position) {
+		ord[index] = position;
+		nodeAt[position] = index;
+	}
+
+	/**
+	 * @return The innovation numbers of all nodes, in an order in which every connection points forward
+	 */
+	public int[] getOrder() {
+		int[] order = new int[size];
+		for (int p = 0; p < size; p++) {
+			order[p] = nodes[nodeAt[p]];
+		}
+		return order;
+	}
+
+	/**
+	 * @return The number of nodes in this order
+	 */
+	public int size() {
+		return size;
+	}
+
+}
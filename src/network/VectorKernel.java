@@ -0,0 +1,93 @@
+package network;
+
+import data.ActivationFunction;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link BatchKernel} using the JDK Vector API to process as many samples per instruction as the CPU allows. Requires
+ * the jdk.incubator.vector module, use {@link data.EvaluationBackend#VECTOR} to fall back to the {@link ScalarKernel}
+ * when it is not available.
+ * 
+ * @author Siemen Geurts, Thomas van den Broek
+ *
+ */
+public class VectorKernel implements BatchKernel {
+
+	private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+	private final ScalarKernel scalar = new ScalarKernel();
+
+	@Override
+	public void accumulate(float[] values, int target, int source, float weight, int count) {
+		int s = 0;
+		for (int bound = SPECIES.loopBound(count); s < bound; s += SPECIES.length()) {
+			FloatVector sum = FloatVector.fromArray(SPECIES, values, target + s);
+			FloatVector v = FloatVector.fromArray(SPECIES, values, source + s);
+			sum.add(v.mul(weight)).intoArray(values, target + s);
+		}
+		scalar.accumulate(values, target + s, source + s, weight, count - s);
+	}
+
+	@Override
+	public void activate(ActivationFunction af, float[] values, int offset, int count) {
+		int s = 0;
+		int bound = SPECIES.loopBound(count);
+		switch (af) {
+		case LINEAR:
+			return;
+		case SIGMOID:
+			for (; s < bound; s += SPECIES.length()) {
+				FloatVector v = FloatVector.fromArray(SPECIES, values, offset + s);
+				v = v.neg().lanewise(VectorOperators.EXP).add(1f);
+				FloatVector.broadcast(SPECIES, 1f).div(v).intoArray(values, offset + s);
+			}
+			break;
+		case TANH:
+			for (; s < bound; s += SPECIES.length()) {
+				FloatVector v = FloatVector.fromArray(SPECIES, values, offset + s);
+				v.lanewise(VectorOperators.TANH).intoArray(values, offset + s);
+			}
+			break;
+		case FAST_TANH:
+			for (; s < bound; s += SPECIES.length()) {
+				FloatVector v = FloatVector.fromArray(SPECIES, values, offset + s);
+				fastTanh(v).intoArray(values, offset + s);
+			}
+			break;
+		case FAST_SIGMOID:
+			for (; s < bound; s += SPECIES.length()) {
+				FloatVector v = FloatVector.fromArray(SPECIES, values, offset + s);
+				fastTanh(v.mul(0.5f)).mul(0.5f).add(0.5f).intoArray(values, offset + s);
+			}
+			break;
+		case STEP:
+			FloatVector zero = FloatVector.zero(SPECIES);
+			FloatVector one = FloatVector.broadcast(SPECIES, 1f);
+			for (; s < bound; s += SPECIES.length()) {
+				FloatVector v = FloatVector.fromArray(SPECIES, values, offset + s);
+				//Not LE instead of GT, so NaN becomes 1 like in ActivationFunction.STEP
+				VectorMask<Float> aboveZero = v.compare(VectorOperators.LE, 0f).not();
+				zero.blend(one, aboveZero).intoArray(values, offset + s);
+			}
+			break;
+		default:
+			break;
+		}
+		scalar.activate(af, values, offset + s, count - s);
+	}
+
+	/**
+	 * The same operations as {@link ActivationFunction#fastTanh}, so both give exactly the same results
+	 */
+	private static FloatVector fastTanh(FloatVector v) {
+		FloatVector x = v.min(ActivationFunction.FAST_TANH_LIMIT).max(-ActivationFunction.FAST_TANH_LIMIT);
+		FloatVector x2 = x.mul(x);
+		FloatVector numerator = x.mul(x2.add(378f).mul(x2).add(17325f).mul(x2).add(135135f));
+		FloatVector denominator = x2.mul(28f).add(3150f).mul(x2).add(62370f).mul(x2).add(135135f);
+		return numerator.div(denominator);
+	}
+
+}
@@ -5,6 +5,7 @@ import java.util.Collections;
 
 import data.ActivationFunction;
 import data.BreedMethod;
+import data.EvaluationMethod;
 import data.KillMethod;
 import data.MutateMethod;
 import data.NEATHeuristic;
@@ -17,11 +18,14 @@ public class Tester {
 
 	public static void main(String[] args) {
 		Core core = new Core();
+		core.setEvaluationMethod(EvaluationMethod.FORK_JOIN);
+		core.addMetricsListener(System.out::println);
 		core.initialize(2, 1, ActivationFunction.LINEAR, ActivationFunction.SIGMOID,
 				KillMethod.BOTTOM_HALF, BreedMethod.PERCENTILE, MutateMethod.PRESERVE_OLD,
 				new NEATHeuristic() {
 					ArrayList<ArrayList<Float>> inputs = new ArrayList<>();
 					ArrayList<Float> outputs = new ArrayList<>();
+					float[][] inputMatrix;
 					public NEATHeuristic initialize() {
 						//XOR FUNCTION
 						ArrayList<Float> in = new ArrayList<>();
@@ -44,19 +48,30 @@ public class Tester {
 						in.add(1f);
 						outputs.add(1f);
 						inputs.add(in);
+						inputMatrix = new float[inputs.size()][];
+						for (int i = 0; i < inputs.size(); i++) {
+							inputMatrix[i] = new float[inputs.get(i).size()];
+							for (int j = 0; j < inputMatrix[i].length; j++) {
+								inputMatrix[i][j] = inputs.get(i).get(j);
+							}
+						}
 						return this;
 					}
 					
 					@Override
 					public float computeFitness(Genome genome) {
 						float errorSum = 0;
+						float[][] output = genome.computeOutputs(inputMatrix);
 						for (int i = 0; i < inputs.size(); i++) {
-							ArrayList<Float> output = genome.computeOutput(inputs.get(i));
-							errorSum += (float)Math.abs(output.get(0) - outputs.get(i)) > .5 ? 1 : 0;
+							errorSum += Math.abs(output[i][0] - outputs.get(i)) > .5 ? 1 : 0;
 						}
 						return 4 - errorSum;
 					}
 					@Override
+					public boolean isThreadSafe() {
+						return true;
+					}
+					@Override
 					public boolean checkStoppingCriteria(Core core) {
 						Genome best = Collections.max(core.getGenomes());
 						System.out.println(best);